@@ -0,0 +1,274 @@
+package geniusweb.sampleagent;
+
+import tudelft.utilities.logging.Reporter;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Logging in front of a {@link Reporter} that keeps the cost on the caller's
+ * thread low. Records below the level are dropped before anything is built,
+ * messages are format strings with "{}" placeholders for the parameters, and
+ * records are put in a lock free ring buffer. One background thread per log
+ * formats them and passes them to the reporter. It is started by the first
+ * record, parks while there is nothing to log, is woken by the next record and
+ * stops when the log is closed.
+ * <p>
+ * When the buffer is full records are dropped rather than making the caller
+ * wait, the number of dropped records is logged later. The parameters are
+ * formatted on the background thread, so they must not be changed after they
+ * are logged.
+ */
+public class AgentLog implements Closeable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    // Longest time the background thread parks without being woken, then it reports drops
+    private static final long IDLE_NANOS = 1_000_000_000L;
+    // Time flush waits between checks
+    private static final long PARK_NANOS = 100_000L;
+
+    private final Reporter reporter;
+    private final int level;
+    // Bounded multi producer, single consumer queue: slot i holds a record if
+    // its sequence is one past the position that claimed it
+    private final Record[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    // The background thread, set once when the first record comes in
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread drainer;
+    // True while the background thread is parked or about to park, producers then wake it
+    private volatile boolean waiting = false;
+    // Held while records are taken out, by the background thread or by producers after close
+    private final Object consumer = new Object();
+    private final AtomicLong dropped = new AtomicLong();
+    // Dropped records that were logged already, only used holding the consumer lock
+    private long reportedDrops = 0;
+    private volatile boolean closed = false;
+
+    public AgentLog(Reporter reporter, Level level) {
+        this(reporter, level, DEFAULT_CAPACITY);
+    }
+
+    // @param capacity number of records that fit in the buffer, rounded up to a power of 2
+    public AgentLog(Reporter reporter, Level level, int capacity) {
+        this.reporter = reporter;
+        this.level = level.intValue();
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.records = new Record[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.records[i] = new Record();
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    public boolean isLoggable(Level level) {
+        return level.intValue() >= this.level && this.level != Level.OFF.intValue();
+    }
+
+    public void log(Level level, String message) {
+        log(level, message, null, null, null, 0);
+    }
+
+    public void log(Level level, String format, Object a) {
+        log(level, format, a, null, null, 1);
+    }
+
+    public void log(Level level, String format, Object a, Object b) {
+        log(level, format, a, b, null, 2);
+    }
+
+    public void log(Level level, String format, Object a, Object b, Object c) {
+        log(level, format, a, b, c, 3);
+    }
+
+    // Number of records dropped because the buffer was full
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Waits until the records logged so far were passed to the reporter.
+     *
+     * @return false if that did not happen within the timeout
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (this.head != this.tail.get()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return true;
+    }
+
+    // Flushes the buffer and stops the background thread, records logged after this go to the reporter right away
+    @Override
+    public void close() {
+        this.closed = true;
+        Thread thread = this.drainer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        flush(1000);
+    }
+
+    // Replaces the placeholders in the format by the first count parameters
+    static String format(String format, Object a, Object b, Object c, int count) {
+        if (count == 0) {
+            return format;
+        }
+        StringBuilder message = new StringBuilder(format.length() + 32);
+        int from = 0;
+        for (int n = 0; n < count; n++) {
+            int at = format.indexOf("{}", from);
+            if (at < 0) {
+                break;
+            }
+            message.append(format, from, at).append(n == 0 ? a : n == 1 ? b : c);
+            from = at + 2;
+        }
+        return message.append(format, from, format.length()).toString();
+    }
+
+    private void log(Level level, String format, Object a, Object b, Object c, int count) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        if (this.closed) {
+            this.reporter.log(level, format(format, a, b, c, count));
+            return;
+        }
+        long position = this.tail.get();
+        int index;
+        while (true) {
+            index = (int) position & this.mask;
+            long difference = this.sequences.get(index) - position;
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = this.tail.get();
+            } else if (difference < 0) {
+                // the slot still holds a record from a lap ago
+                this.dropped.incrementAndGet();
+                return;
+            } else {
+                position = this.tail.get();
+            }
+        }
+        this.records[index].set(level, format, a, b, c, count);
+        // a volatile write, so the waiting flag below is read after the record is visible
+        this.sequences.set(index, position + 1);
+        Thread thread = this.drainer;
+        if (thread == null) {
+            start();
+        } else if (this.waiting) {
+            LockSupport.unpark(thread);
+        }
+        if (this.closed) {
+            // the background thread may have stopped before this record came in
+            drainAll();
+        }
+    }
+
+    private void start() {
+        if (this.started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::drain, "AgentLog");
+            thread.setDaemon(true);
+            this.drainer = thread;
+            thread.start();
+        }
+    }
+
+    // Runs on the background thread until the log is closed
+    private void drain() {
+        while (true) {
+            drainAll();
+            if (this.closed) {
+                drainAll();
+                return;
+            }
+            this.waiting = true;
+            // a record that came in before the flag was set did not wake us
+            if (!hasRecord() && !this.closed) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+            this.waiting = false;
+        }
+    }
+
+    // Passes all records that are in to the reporter, and logs how many were dropped
+    private void drainAll() {
+        synchronized (this.consumer) {
+            while (poll()) {
+                // next record
+            }
+            long drops = this.dropped.get();
+            if (drops != this.reportedDrops) {
+                report(Level.WARNING, "Dropped " + (drops - this.reportedDrops) + " log records");
+                this.reportedDrops = drops;
+            }
+        }
+    }
+
+    private boolean hasRecord() {
+        long position = this.head;
+        return this.sequences.get((int) position & this.mask) == position + 1;
+    }
+
+    // Passes the oldest record to the reporter, false if there is none. Only called holding the consumer lock.
+    private boolean poll() {
+        long position = this.head;
+        int index = (int) position & this.mask;
+        if (this.sequences.get(index) != position + 1) {
+            return false;
+        }
+        Record record = this.records[index];
+        Level level = record.level;
+        String message = format(record.format, record.a, record.b, record.c, record.count);
+        record.clear();
+        this.sequences.lazySet(index, position + this.records.length);
+        report(level, message);
+        this.head = position + 1;
+        return true;
+    }
+
+    private void report(Level level, String message) {
+        try {
+            this.reporter.log(level, message);
+        } catch (RuntimeException e) {
+            // a failing reporter must not stop the background thread
+        }
+    }
+
+    private static class Record {
+        private Level level;
+        private String format;
+        private Object a, b, c;
+        private int count;
+
+        private void set(Level level, String format, Object a, Object b, Object c, int count) {
+            this.level = level;
+            this.format = format;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.count = count;
+        }
+
+        private void clear() {
+            this.format = null;
+            this.a = this.b = this.c = null;
+        }
+    }
+}
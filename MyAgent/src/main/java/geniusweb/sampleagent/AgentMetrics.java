@@ -0,0 +1,286 @@
+package geniusweb.sampleagent;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Performance counters of all agents in the JVM: latency histograms of the
+ * phases of a session, counts of the actions, and the size of the bid tables
+ * and offer histories of the open sessions. Recording only updates striped
+ * counters and {@link LatencyHistogram}s, so it stays on in production.
+ * <p>
+ * The metrics can be pulled with {@link #snapshot()} and are published over
+ * JMX as {@value #OBJECT_NAME}. Thread safe.
+ */
+public class AgentMetrics implements AgentMetricsMXBean {
+
+    public static final String OBJECT_NAME = "geniusweb.sampleagent:type=AgentMetrics";
+
+    public enum Phase {
+        // from the settings until the agent is ready to negotiate
+        INIT,
+        // adding an offer to the history and the opponent model
+        OPPONENT_MODEL,
+        // choosing the bid to offer
+        CREATE_BID,
+        // deciding whether to accept the opponent's offer
+        ACCEPTANCE
+    }
+
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder openSessions = new LongAdder();
+    private final LongAdder offers = new LongAdder();
+    private final LongAdder accepts = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder bidTableSize = new LongAdder();
+    private final LongAdder bidTableHeapBytes = new LongAdder();
+    private final LongAdder historyLength = new LongAdder();
+
+    // The metrics of the JVM, registered with the platform MBean server when they are first used
+    public static AgentMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final AgentMetrics INSTANCE = register(new AgentMetrics());
+    }
+
+    // Metrics of their own, for tests. Use getInstance() for the metrics of the JVM.
+    AgentMetrics() {
+        for (Phase phase : Phase.values()) {
+            this.latencies.put(phase, new LatencyHistogram());
+        }
+    }
+
+    private static AgentMetrics register(AgentMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                // the agent was loaded by another class loader too
+                name = new ObjectName(OBJECT_NAME + ",loader="
+                        + Integer.toHexString(System.identityHashCode(AgentMetrics.class.getClassLoader())));
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException | SecurityException e) {
+            // without JMX the metrics can still be pulled
+        }
+        return metrics;
+    }
+
+    // Counts a session, the handle keeps its bid table and history in the metrics until it is closed
+    public Session openSession() {
+        this.sessions.increment();
+        this.openSessions.increment();
+        return new Session();
+    }
+
+    public void record(Phase phase, long nanos) {
+        this.latencies.get(phase).record(nanos);
+    }
+
+    public void offer() {
+        this.offers.increment();
+    }
+
+    public void accept() {
+        this.accepts.increment();
+    }
+
+    public void fallback() {
+        this.fallbacks.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    @Override
+    public long getSessions() {
+        return this.sessions.sum();
+    }
+
+    @Override
+    public long getOpenSessions() {
+        return this.openSessions.sum();
+    }
+
+    @Override
+    public long getOffers() {
+        return this.offers.sum();
+    }
+
+    @Override
+    public long getAccepts() {
+        return this.accepts.sum();
+    }
+
+    @Override
+    public long getFallbacks() {
+        return this.fallbacks.sum();
+    }
+
+    @Override
+    public long getBidTableSize() {
+        return this.bidTableSize.sum();
+    }
+
+    @Override
+    public long getBidTableHeapBytes() {
+        return this.bidTableHeapBytes.sum();
+    }
+
+    @Override
+    public long getHistoryLength() {
+        return this.historyLength.sum();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getInitLatency() {
+        return getLatency(Phase.INIT);
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getOpponentModelLatency() {
+        return getLatency(Phase.OPPONENT_MODEL);
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getCreateBidLatency() {
+        return getLatency(Phase.CREATE_BID);
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getAcceptanceLatency() {
+        return getLatency(Phase.ACCEPTANCE);
+    }
+
+    public LatencyHistogram.Snapshot getLatency(Phase phase) {
+        return this.latencies.get(phase).snapshot();
+    }
+
+    /**
+     * The part of one session in the size metrics.
+     */
+    public class Session implements AutoCloseable {
+        private long tableSize = 0;
+        private long tableHeapBytes = 0;
+        private long history = 0;
+        private boolean closed = false;
+
+        private Session() {
+        }
+
+        public synchronized void setBidTable(long size, long heapBytes) {
+            if (!this.closed) {
+                bidTableSize.add(size - this.tableSize);
+                bidTableHeapBytes.add(heapBytes - this.tableHeapBytes);
+                this.tableSize = size;
+                this.tableHeapBytes = heapBytes;
+            }
+        }
+
+        public synchronized void setHistoryLength(long length) {
+            if (!this.closed) {
+                historyLength.add(length - this.history);
+                this.history = length;
+            }
+        }
+
+        // Takes the session out of the size metrics, can be called more than once
+        @Override
+        public synchronized void close() {
+            if (this.closed) {
+                return;
+            }
+            setBidTable(0, 0);
+            setHistoryLength(0);
+            openSessions.decrement();
+            this.closed = true;
+        }
+    }
+
+    /**
+     * The metrics at one moment.
+     */
+    public static class Snapshot {
+        private final long sessions;
+        private final long openSessions;
+        private final long offers;
+        private final long accepts;
+        private final long fallbacks;
+        private final long bidTableSize;
+        private final long bidTableHeapBytes;
+        private final long historyLength;
+        private final Map<Phase, LatencyHistogram.Snapshot> latencies = new EnumMap<>(Phase.class);
+
+        private Snapshot(AgentMetrics metrics) {
+            this.sessions = metrics.getSessions();
+            this.openSessions = metrics.getOpenSessions();
+            this.offers = metrics.getOffers();
+            this.accepts = metrics.getAccepts();
+            this.fallbacks = metrics.getFallbacks();
+            this.bidTableSize = metrics.getBidTableSize();
+            this.bidTableHeapBytes = metrics.getBidTableHeapBytes();
+            this.historyLength = metrics.getHistoryLength();
+            for (Phase phase : Phase.values()) {
+                this.latencies.put(phase, metrics.getLatency(phase));
+            }
+        }
+
+        public long getSessions() {
+            return this.sessions;
+        }
+
+        public long getOpenSessions() {
+            return this.openSessions;
+        }
+
+        public long getOffers() {
+            return this.offers;
+        }
+
+        public long getAccepts() {
+            return this.accepts;
+        }
+
+        public long getFallbacks() {
+            return this.fallbacks;
+        }
+
+        public long getBidTableSize() {
+            return this.bidTableSize;
+        }
+
+        public long getBidTableHeapBytes() {
+            return this.bidTableHeapBytes;
+        }
+
+        public long getHistoryLength() {
+            return this.historyLength;
+        }
+
+        public LatencyHistogram.Snapshot getLatency(Phase phase) {
+            return this.latencies.get(phase);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(
+                    "%d sessions (%d open), %d offers, %d accepts, %d fallbacks, %d bids in tables (%d bytes), "
+                            + "%d offers in histories",
+                    this.sessions, this.openSessions, this.offers, this.accepts, this.fallbacks, this.bidTableSize,
+                    this.bidTableHeapBytes, this.historyLength));
+            for (Map.Entry<Phase, LatencyHistogram.Snapshot> latency : this.latencies.entrySet()) {
+                builder.append("\n").append(latency.getKey()).append(": ").append(latency.getValue());
+            }
+            return builder.toString();
+        }
+    }
+}
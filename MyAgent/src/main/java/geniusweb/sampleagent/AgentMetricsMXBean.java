@@ -0,0 +1,38 @@
+package geniusweb.sampleagent;
+
+/**
+ * JMX view of the {@link AgentMetrics} of all agents in the JVM. Latencies are
+ * shown as count, mean, percentiles and maximum in ms.
+ */
+public interface AgentMetricsMXBean {
+
+    // Sessions started since the JVM started
+    long getSessions();
+
+    // Sessions that are still running
+    long getOpenSessions();
+
+    long getOffers();
+
+    long getAccepts();
+
+    // Turns where the planned action was not ready in time
+    long getFallbacks();
+
+    // Bids in the tables of the open sessions
+    long getBidTableSize();
+
+    // Heap taken by the tables of the open sessions, tables shared by sessions count once for each
+    long getBidTableHeapBytes();
+
+    // Offers in the histories of the open sessions
+    long getHistoryLength();
+
+    LatencyHistogram.Snapshot getInitLatency();
+
+    LatencyHistogram.Snapshot getOpponentModelLatency();
+
+    LatencyHistogram.Snapshot getCreateBidLatency();
+
+    LatencyHistogram.Snapshot getAcceptanceLatency();
+}
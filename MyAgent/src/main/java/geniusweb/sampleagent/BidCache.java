@@ -0,0 +1,44 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+
+import java.util.Arrays;
+
+/**
+ * Small direct mapped cache of decoded bids. The agent offers the same few bids
+ * turn after turn, mostly the Nash point, so with the cache a turn does not
+ * build a new {@link Bid} each time. Bids are immutable, so a cached bid can be
+ * sent again.
+ * <p>
+ * Not thread safe.
+ */
+public class BidCache {
+
+    private final DomainSchema schema;
+    private final long[] codes;
+    private final Bid[] bids;
+    private final int mask;
+
+    // @param capacity number of bids kept, rounded up to a power of 2
+    public BidCache(DomainSchema schema, int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1);
+        this.schema = schema;
+        this.codes = new long[size];
+        this.bids = new Bid[size];
+        this.mask = size - 1;
+        Arrays.fill(this.codes, -1);
+    }
+
+    // @return the bid with the code, decoded only if it is not in the cache
+    public Bid get(long code) {
+        // spread the bits, codes of bids close in the ranking often differ in the high issues only
+        int slot = (int) ((code * 0x9E3779B97F4A7C15L) >>> 40) & this.mask;
+        if (this.codes[slot] == code) {
+            return this.bids[slot];
+        }
+        Bid bid = this.schema.decode(code);
+        this.codes[slot] = code;
+        this.bids[slot] = bid;
+        return bid;
+    }
+}
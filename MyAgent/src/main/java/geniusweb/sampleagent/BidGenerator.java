@@ -0,0 +1,184 @@
+package geniusweb.sampleagent;
+
+import java.util.PriorityQueue;
+
+/**
+ * Generates bids from the per-issue value utilities of a {@link CompiledProfile}
+ * without enumerating the bid space. {@link #descending()} yields the bids in
+ * descending utility order by best-first search, and
+ * {@link #forEachAtLeast(double, long, BidConsumer)} walks all bids above a
+ * threshold by branch-and-bound over the issues.
+ */
+public class BidGenerator {
+
+    public interface BidConsumer {
+        void accept(long code, double utility);
+    }
+
+    private static final double BOUND_SLACK = 1e-9;
+
+    private final DomainSchema schema;
+    private final int issueCount;
+    // sortedOrdinals[i][r] is the value ordinal of issue i with the r-th highest utility
+    private final int[][] sortedOrdinals;
+    // sortedUtilities[i][r] is the weighted utility of sortedOrdinals[i][r]
+    private final double[][] sortedUtilities;
+    // bestRest[i] is the highest utility the issues i .. issueCount-1 can add
+    private final double[] bestRest;
+
+    public BidGenerator(CompiledProfile profile) {
+        this.schema = profile.getSchema();
+        this.issueCount = this.schema.getIssueCount();
+        this.sortedOrdinals = new int[this.issueCount][];
+        this.sortedUtilities = new double[this.issueCount][];
+        for (int i = 0; i < this.issueCount; i++) {
+            int valueCount = this.schema.getValueCount(i);
+            double[] utilities = new double[valueCount];
+            int[] ordinals = new int[valueCount];
+            for (int v = 0; v < valueCount; v++) {
+                utilities[v] = profile.getWeightedUtility(i, v);
+                ordinals[v] = v;
+            }
+            BidTable.sortDescending(utilities, ordinals);
+            this.sortedOrdinals[i] = ordinals;
+            this.sortedUtilities[i] = utilities;
+        }
+        this.bestRest = new double[this.issueCount + 1];
+        for (int i = this.issueCount - 1; i >= 0; i--) {
+            this.bestRest[i] = this.bestRest[i + 1] + (this.sortedUtilities[i].length == 0 ? 0 : this.sortedUtilities[i][0]);
+        }
+    }
+
+    public DomainSchema getSchema() {
+        return this.schema;
+    }
+
+    // @return a new cursor over all bids, best bid first
+    public Descending descending() {
+        return new Descending();
+    }
+
+    /**
+     * Calls the consumer for every bid with utility &ge; threshold, in no
+     * particular order, until limit bids were found. Branches that can not reach
+     * the threshold anymore are cut off.
+     *
+     * @param consumer may be null to only count the bids
+     * @return the number of bids passed to the consumer
+     */
+    public long forEachAtLeast(double threshold, long limit, BidConsumer consumer) {
+        if (this.issueCount == 0 || limit <= 0) {
+            return 0;
+        }
+        return search(0, 0, 0, threshold, limit, 0, consumer);
+    }
+
+    public long countAtLeast(double threshold, long limit) {
+        return forEachAtLeast(threshold, limit, null);
+    }
+
+    private long search(int issue, long code, double partial, double threshold, long limit, long found,
+                        BidConsumer consumer) {
+        int[] ordinals = this.sortedOrdinals[issue];
+        double[] utilities = this.sortedUtilities[issue];
+        long stride = this.schema.getStride(issue);
+        boolean last = issue == this.issueCount - 1;
+        for (int r = 0; r < ordinals.length && found < limit; r++) {
+            double utility = partial + utilities[r];
+            // bestRest is summed in another order, so inner bounds get some slack
+            if (last ? utility < threshold : utility + this.bestRest[issue + 1] < threshold - BOUND_SLACK) {
+                break; // the remaining values of this issue are even worse
+            }
+            long next = code + ordinals[r] * stride;
+            if (last) {
+                if (consumer != null) {
+                    consumer.accept(next, utility);
+                }
+                found++;
+            } else {
+                found = search(issue + 1, next, utility, threshold, limit, found, consumer);
+            }
+        }
+        return found;
+    }
+
+    private double utilityOf(int[] ranks) {
+        double utility = 0;
+        for (int i = 0; i < this.issueCount; i++) {
+            utility += this.sortedUtilities[i][ranks[i]];
+        }
+        return utility;
+    }
+
+    private long codeOf(int[] ranks) {
+        long code = 0;
+        for (int i = 0; i < this.issueCount; i++) {
+            code += this.sortedOrdinals[i][ranks[i]] * this.schema.getStride(i);
+        }
+        return code;
+    }
+
+    /**
+     * Cursor over the bids in descending utility order. A search state is a
+     * vector with the utility rank of the value of each issue. The successors of
+     * a state raise one rank at or after the last raised issue, so every vector
+     * is reached exactly once and never before a better one.
+     */
+    public class Descending {
+
+        private final PriorityQueue<State> queue = new PriorityQueue<>();
+        private long code = -1;
+        private double utility;
+
+        private Descending() {
+            if (issueCount > 0) {
+                int[] ranks = new int[issueCount];
+                this.queue.add(new State(ranks, 0, utilityOf(ranks)));
+            }
+        }
+
+        // Moves to the next bid. @return false if there are no more bids
+        public boolean next() {
+            State state = this.queue.poll();
+            if (state == null) {
+                return false;
+            }
+            for (int i = state.pivot; i < issueCount; i++) {
+                if (state.ranks[i] + 1 < sortedOrdinals[i].length) {
+                    int[] ranks = state.ranks.clone();
+                    ranks[i]++;
+                    this.queue.add(new State(ranks, i, utilityOf(ranks)));
+                }
+            }
+            this.code = codeOf(state.ranks);
+            this.utility = state.utility;
+            return true;
+        }
+
+        public long getCode() {
+            return this.code;
+        }
+
+        public double getUtility() {
+            return this.utility;
+        }
+    }
+
+    private static class State implements Comparable<State> {
+        private final int[] ranks;
+        // first issue that successors may raise
+        private final int pivot;
+        private final double utility;
+
+        private State(int[] ranks, int pivot, double utility) {
+            this.ranks = ranks;
+            this.pivot = pivot;
+            this.utility = utility;
+        }
+
+        @Override
+        public int compareTo(State other) {
+            return Double.compare(other.utility, this.utility);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+
+/**
+ * Bids of a domain ordered on our utility, best bid first. Rank 0 is the best
+ * bid. Implementations may compute the ranking lazily, so asking for a rank or
+ * a count only costs as much as the bids up to there.
+ */
+public interface BidRanking {
+
+    // Number of ranks that can be asked for
+    int size();
+
+    Bid getBid(int rank);
+
+    // The DomainSchema code of the bid at the rank
+    long getCode(int rank);
+
+    double getUtility(int rank);
+
+    /**
+     * @return the number of bids with utility &ge; threshold. These are the bids
+     *         at ranks 0 (inclusive) to the returned value (exclusive).
+     */
+    default int countAtLeast(double threshold) {
+        return countAtLeast(threshold, size());
+    }
+
+    /**
+     * Like {@link #countAtLeast(double)}, but stops counting at the limit, so
+     * the cost is bounded by the limit even if far more bids are good enough.
+     *
+     * @return the number of bids with utility &ge; threshold, at most limit
+     */
+    int countAtLeast(double threshold, int limit);
+}
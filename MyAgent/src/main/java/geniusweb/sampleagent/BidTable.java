@@ -0,0 +1,213 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Compact table of all bids of a domain, sorted on utility (descending). A bid is
+ * stored as an int code, its {@link DomainSchema} code, and the utilities are
+ * kept in a parallel double array. This gives O(1) lookup of the n-th best
+ * bid and a binary search for the bids above a utility threshold.
+ * <p>
+ * The codes and utilities are kept in buffers, so a table can also be mapped
+ * straight from a file by the {@link BidTableCache}.
+ */
+public class BidTable implements BidRanking {
+
+    private final DomainSchema schema;
+    // Bid codes, ordered from the best bid to the worst one
+    private final IntBuffer codes;
+    // utilities[i] is the utility of the bid codes[i]
+    private final DoubleBuffer utilities;
+    // false if only part of the domain was scored
+    private final boolean complete;
+
+    public BidTable(CompiledProfile profile) {
+        long size = profile.getSchema().size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Domain has too many bids for a table: " + size);
+        }
+        this.schema = profile.getSchema();
+        int[] codes = new int[(int) size];
+        double[] utilities = new double[(int) size];
+        for (int code = 0; code < size; code++) {
+            codes[code] = code;
+        }
+        profile.fillUtilities(0, utilities, 0, (int) size);
+        sortDescending(utilities, codes);
+        this.codes = IntBuffer.wrap(codes);
+        this.utilities = DoubleBuffer.wrap(utilities);
+        this.complete = true;
+    }
+
+    // Table on already sorted arrays, see BidTableBuilder
+    BidTable(DomainSchema schema, int[] codes, double[] utilities, boolean complete) {
+        this(schema, IntBuffer.wrap(codes), DoubleBuffer.wrap(utilities), complete);
+    }
+
+    // Table on already sorted buffers of the same length, indexed from 0
+    BidTable(DomainSchema schema, IntBuffer codes, DoubleBuffer utilities, boolean complete) {
+        if (codes.capacity() != utilities.capacity()) {
+            throw new IllegalArgumentException("Codes and utilities differ in length");
+        }
+        this.schema = schema;
+        this.codes = codes;
+        this.utilities = utilities;
+        this.complete = complete;
+    }
+
+    public DomainSchema getSchema() {
+        return this.schema;
+    }
+
+    // Number of bids in the table
+    @Override
+    public int size() {
+        return this.codes.capacity();
+    }
+
+    // Heap the codes and utilities take, 0 if they are outside the heap
+    public long getHeapBytes() {
+        return this.codes.isDirect() ? 0 : (long) size() * (Integer.BYTES + Double.BYTES);
+    }
+
+    // @return true if the table holds every bid of the domain
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    @Override
+    public Bid getBid(int rank) {
+        return this.schema.decode(this.codes.get(rank));
+    }
+
+    @Override
+    public long getCode(int rank) {
+        return this.codes.get(rank);
+    }
+
+    @Override
+    public double getUtility(int rank) {
+        return this.utilities.get(rank);
+    }
+
+    @Override
+    public int countAtLeast(double threshold, int limit) {
+        int low = 0, high = Math.max(0, Math.min(limit, this.utilities.capacity()));
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.utilities.get(mid) >= threshold) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Read only views of the codes and the utilities, for the BidTableCache
+    IntBuffer getCodes() {
+        return this.codes.asReadOnlyBuffer();
+    }
+
+    DoubleBuffer getUtilities() {
+        return this.utilities.asReadOnlyBuffer();
+    }
+
+    /**
+     * Sorts keys in descending order, permuting values along. The sort is stable,
+     * so bids with equal utility keep their code order.
+     */
+    static void sortDescending(double[] keys, int[] values) {
+        sortDescending(keys, values, 0, keys.length, new double[keys.length], new int[values.length]);
+    }
+
+    // Sorts the range from (inclusive) to to (exclusive), using the same range of the buffers
+    static void sortDescending(double[] keys, int[] values, int from, int to, double[] keyBuffer,
+                               int[] valueBuffer) {
+        mergeSort(keys, values, keyBuffer, valueBuffer, from, to);
+    }
+
+    /**
+     * Merges the sorted runs [left, left+leftCount) and [right, right+rightCount)
+     * into [left, left+leftCount+rightCount), with the same range of the buffers
+     * as scratch space. The left run goes first on equal keys.
+     */
+    static void merge(double[] keys, int[] values, int left, int leftCount, int right, int rightCount,
+                      double[] keyBuffer, int[] valueBuffer) {
+        System.arraycopy(keys, left, keyBuffer, left, leftCount);
+        System.arraycopy(values, left, valueBuffer, left, leftCount);
+        System.arraycopy(keys, right, keyBuffer, left + leftCount, rightCount);
+        System.arraycopy(values, right, valueBuffer, left + leftCount, rightCount);
+        int i = left, leftEnd = left + leftCount, j = leftEnd, end = leftEnd + rightCount;
+        for (int k = left; k < end; k++) {
+            if (j >= end || (i < leftEnd && keyBuffer[i] >= keyBuffer[j])) {
+                keys[k] = keyBuffer[i];
+                values[k] = valueBuffer[i++];
+            } else {
+                keys[k] = keyBuffer[j];
+                values[k] = valueBuffer[j++];
+            }
+        }
+    }
+
+    // The same merge on buffers, for tables that are kept off the heap
+    static void merge(DoubleBuffer keys, IntBuffer values, int left, int leftCount, int right, int rightCount,
+                      DoubleBuffer keyBuffer, IntBuffer valueBuffer) {
+        copy(keys, values, left, keyBuffer, valueBuffer, left, leftCount);
+        copy(keys, values, right, keyBuffer, valueBuffer, left + leftCount, rightCount);
+        int i = left, leftEnd = left + leftCount, j = leftEnd, end = leftEnd + rightCount;
+        for (int k = left; k < end; k++) {
+            if (j >= end || (i < leftEnd && keyBuffer.get(i) >= keyBuffer.get(j))) {
+                keys.put(k, keyBuffer.get(i));
+                values.put(k, valueBuffer.get(i++));
+            } else {
+                keys.put(k, keyBuffer.get(j));
+                values.put(k, valueBuffer.get(j++));
+            }
+        }
+    }
+
+    // Copies count keys and values from index from to index to
+    private static void copy(DoubleBuffer keys, IntBuffer values, int from, DoubleBuffer keyTarget,
+                             IntBuffer valueTarget, int to, int count) {
+        DoubleBuffer keyRange = keys.duplicate();
+        keyRange.limit(from + count).position(from);
+        ((DoubleBuffer) keyTarget.duplicate().position(to)).put(keyRange);
+        IntBuffer valueRange = values.duplicate();
+        valueRange.limit(from + count).position(from);
+        ((IntBuffer) valueTarget.duplicate().position(to)).put(valueRange);
+    }
+
+    private static void mergeSort(double[] keys, int[] values, double[] keyBuffer, int[] valueBuffer,
+                                  int from, int to) {
+        if (to - from <= 32) {
+            insertionSort(keys, values, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(keys, values, keyBuffer, valueBuffer, from, mid);
+        mergeSort(keys, values, keyBuffer, valueBuffer, mid, to);
+        if (keys[mid - 1] >= keys[mid]) {
+            return; // halves already in order
+        }
+        merge(keys, values, from, mid - from, mid, to - mid, keyBuffer, valueBuffer);
+    }
+
+    private static void insertionSort(double[] keys, int[] values, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            double key = keys[i];
+            int value = values[i];
+            int j = i - 1;
+            while (j >= from && keys[j] < key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+}
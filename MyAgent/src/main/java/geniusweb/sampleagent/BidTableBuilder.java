@@ -0,0 +1,242 @@
+package geniusweb.sampleagent;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Builds a {@link BidTable} on a {@link ForkJoinPool}. The bid codes are cut in
+ * short runs that are dealt round-robin to the leaf tasks. Each leaf scores and
+ * sorts its runs, and the leaves are merged pairwise back up.
+ * <p>
+ * Leaves that start after the deadline are skipped. The table then holds the
+ * bids of the finished leaves only, and because every leaf has runs from all
+ * over the bid space that part is a fair sample of the whole domain.
+ * <p>
+ * Off heap, the table is built in direct buffers. The leaves then score and
+ * sort their bids in arrays of their own and copy them out, so the heap only
+ * holds the leaves that are running, and the merges run on the buffers.
+ */
+public class BidTableBuilder {
+
+    // Bids that are scored in one odometer walk
+    private static final int RUN_LENGTH = 256;
+    // Minimum number of bids per leaf task
+    private static final int MIN_LEAF_SIZE = 1 << 14;
+
+    private final CompiledProfile profile;
+    private final ForkJoinPool pool;
+    // System time in ms after which no more leaves are started
+    private final long deadline;
+    private final boolean offHeap;
+
+    private int size;
+    private int runs;
+    private int leaves;
+    // offsets[j] is the index of the first bid of leaf j in the arrays
+    private int[] offsets;
+    private int[] codes;
+    private double[] utilities;
+    private int[] codeBuffer;
+    private double[] utilityBuffer;
+    // the table and the scratch space of the merges when it is built off heap
+    private IntBuffer directCodes;
+    private DoubleBuffer directUtilities;
+    private IntBuffer directCodeBuffer;
+    private DoubleBuffer directUtilityBuffer;
+    private final AtomicBoolean expired = new AtomicBoolean(false);
+
+    public BidTableBuilder(CompiledProfile profile, ForkJoinPool pool, long deadline) {
+        this(profile, pool, deadline, false);
+    }
+
+    // @param offHeap true to keep the table in direct buffers, outside the heap
+    public BidTableBuilder(CompiledProfile profile, ForkJoinPool pool, long deadline, boolean offHeap) {
+        this.profile = profile;
+        this.pool = pool;
+        this.deadline = deadline;
+        this.offHeap = offHeap;
+    }
+
+    // Direct memory an off heap build of a table with the number of bids takes: the table and the scratch space
+    public static long getOffHeapBytes(long size) {
+        return 2 * size * (Integer.BYTES + Double.BYTES);
+    }
+
+    // The -XX:MaxDirectMemorySize of this JVM, which is the maximum heap size if it is not set
+    public static long getMaxDirectMemory() {
+        HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        if (diagnostics != null) {
+            try {
+                long max = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+                if (max > 0) {
+                    return max;
+                }
+            } catch (IllegalArgumentException e) {
+                // not a HotSpot JVM after all, it has no such option
+            }
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    // Can only be called once
+    public BidTable build() {
+        long domainSize = this.profile.getSchema().size();
+        if (domainSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Domain has too many bids for a table: " + domainSize);
+        }
+        this.size = (int) domainSize;
+        this.runs = (this.size + RUN_LENGTH - 1) / RUN_LENGTH;
+        this.leaves = Math.max(1, Math.min(this.size / MIN_LEAF_SIZE, this.pool.getParallelism() * 8));
+        this.leaves = Math.min(this.leaves, Math.max(1, this.runs));
+        this.offsets = new int[this.leaves + 1];
+        for (int j = 0; j < this.leaves; j++) {
+            this.offsets[j + 1] = this.offsets[j] + leafSize(j);
+        }
+        if (this.offHeap) {
+            return buildOffHeap();
+        }
+        this.codes = new int[this.size];
+        this.utilities = new double[this.size];
+        this.codeBuffer = new int[this.size];
+        this.utilityBuffer = new double[this.size];
+
+        int scored = this.size == 0 ? 0 : this.pool.invoke(new Task(0, this.leaves));
+        this.codeBuffer = null;
+        this.utilityBuffer = null;
+        if (scored < this.size) {
+            return new BidTable(this.profile.getSchema(), Arrays.copyOf(this.codes, scored),
+                    Arrays.copyOf(this.utilities, scored), false);
+        }
+        return new BidTable(this.profile.getSchema(), this.codes, this.utilities, true);
+    }
+
+    private BidTable buildOffHeap() {
+        if ((long) this.size * Double.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Domain has too many bids for a direct buffer: " + this.size);
+        }
+        this.directCodes = allocate(this.size * Integer.BYTES).asIntBuffer();
+        this.directUtilities = allocate(this.size * Double.BYTES).asDoubleBuffer();
+        this.directCodeBuffer = allocate(this.size * Integer.BYTES).asIntBuffer();
+        this.directUtilityBuffer = allocate(this.size * Double.BYTES).asDoubleBuffer();
+
+        int scored = this.size == 0 ? 0 : this.pool.invoke(new Task(0, this.leaves));
+        this.directCodeBuffer = null;
+        this.directUtilityBuffer = null;
+        if (scored < this.size) {
+            // the unscored part stays allocated until the table is collected, this only happens when time is short
+            this.directCodes.limit(scored);
+            this.directUtilities.limit(scored);
+            return new BidTable(this.profile.getSchema(), this.directCodes.slice(), this.directUtilities.slice(),
+                    false);
+        }
+        return new BidTable(this.profile.getSchema(), this.directCodes, this.directUtilities, true);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    // Number of bids in the runs j, j+leaves, j+2*leaves, ...
+    private int leafSize(int j) {
+        if (j >= this.runs) {
+            return 0;
+        }
+        int leafRuns = (this.runs - j + this.leaves - 1) / this.leaves;
+        int total = leafRuns * RUN_LENGTH;
+        if ((this.runs - 1) % this.leaves == j) {
+            total -= this.runs * RUN_LENGTH - this.size; // last run is short
+        }
+        return total;
+    }
+
+    // Scores and sorts leaf j. @return the number of bids scored
+    private int leaf(int j) {
+        if (this.expired.get() || System.currentTimeMillis() > this.deadline) {
+            this.expired.set(true);
+            return 0;
+        }
+        if (this.offHeap) {
+            return offHeapLeaf(j);
+        }
+        int position = this.offsets[j];
+        for (int run = j; run < this.runs; run += this.leaves) {
+            int start = run * RUN_LENGTH;
+            int length = Math.min(RUN_LENGTH, this.size - start);
+            this.profile.fillUtilities(start, this.utilities, position, length);
+            for (int k = 0; k < length; k++) {
+                this.codes[position + k] = start + k;
+            }
+            position += length;
+        }
+        BidTable.sortDescending(this.utilities, this.codes, this.offsets[j], position, this.utilityBuffer,
+                this.codeBuffer);
+        return position - this.offsets[j];
+    }
+
+    // Scores and sorts leaf j on the heap and copies it to the direct buffers
+    private int offHeapLeaf(int j) {
+        int length = this.offsets[j + 1] - this.offsets[j];
+        int[] codes = new int[length];
+        double[] utilities = new double[length];
+        int position = 0;
+        for (int run = j; run < this.runs; run += this.leaves) {
+            int start = run * RUN_LENGTH;
+            int runLength = Math.min(RUN_LENGTH, this.size - start);
+            this.profile.fillUtilities(start, utilities, position, runLength);
+            for (int k = 0; k < runLength; k++) {
+                codes[position + k] = start + k;
+            }
+            position += runLength;
+        }
+        BidTable.sortDescending(utilities, codes);
+        IntBuffer codeRange = this.directCodes.duplicate();
+        codeRange.position(this.offsets[j]);
+        codeRange.put(codes);
+        DoubleBuffer utilityRange = this.directUtilities.duplicate();
+        utilityRange.position(this.offsets[j]);
+        utilityRange.put(utilities);
+        return length;
+    }
+
+    /**
+     * Handles the leaves lo .. hi-1. Leaves the sorted scored bids at the start
+     * of the range of leaf lo and returns their number.
+     */
+    private class Task extends RecursiveTask<Integer> {
+        private final int lo, hi;
+
+        private Task(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (this.hi - this.lo == 1) {
+                return leaf(this.lo);
+            }
+            int mid = (this.lo + this.hi) >>> 1;
+            Task left = new Task(this.lo, mid);
+            left.fork();
+            int rightCount = new Task(mid, this.hi).compute();
+            int leftCount = left.join();
+            if (offHeap) {
+                BidTable.merge(directUtilities, directCodes, offsets[this.lo], leftCount, offsets[mid], rightCount,
+                        directUtilityBuffer, directCodeBuffer);
+            } else {
+                BidTable.merge(utilities, codes, offsets[this.lo], leftCount, offsets[mid], rightCount,
+                        utilityBuffer, codeBuffer);
+            }
+            return leftCount + rightCount;
+        }
+    }
+}
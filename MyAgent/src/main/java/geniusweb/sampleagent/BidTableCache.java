@@ -0,0 +1,143 @@
+package geniusweb.sampleagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Directory of complete {@link BidTable}s, one file per profile. A file is
+ * named after the {@link CompiledProfile#getContentHash()} of its profile,
+ * which is also stored in the file and checked on load. Sessions with a
+ * profile that was played before map its table from the file instead of
+ * scoring and sorting the whole domain again.
+ * <p>
+ * A file holds a header, the sorted codes as ints and the utilities as
+ * doubles, and is mapped read only as it is.
+ */
+public class BidTableCache {
+
+    private static final int MAGIC = 0x4d414254; // "MABT"
+    private static final int VERSION = 1;
+    // header: magic, version, number of bids, number of issues, profile hash, value counts
+    private static final int SIZE = 8;
+    private static final int ISSUE_COUNT = 12;
+    private static final int HASH = 16;
+    private static final int HASH_LENGTH = 32;
+    private static final int RADICES = HASH + HASH_LENGTH;
+
+    private final File directory;
+
+    public BidTableCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cached table of the profile, null if there is none or the
+     *         file is not a valid table of the profile
+     */
+    public BidTable load(CompiledProfile profile) throws IOException {
+        byte[] hash = profile.getContentHash();
+        File file = getFile(hash);
+        if (!file.exists()) {
+            return null;
+        }
+        DomainSchema schema = profile.getSchema();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int header = getHeaderSize(schema);
+            long expected = getFileSize(schema);
+            if (channel.size() != expected) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, expected);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(SIZE) != schema.size()
+                    || buffer.getInt(ISSUE_COUNT) != schema.getIssueCount()) {
+                return null;
+            }
+            byte[] stored = new byte[HASH_LENGTH];
+            ByteBuffer view = buffer.duplicate();
+            view.position(HASH);
+            view.get(stored);
+            if (!Arrays.equals(stored, hash)) {
+                return null;
+            }
+            for (int i = 0; i < schema.getIssueCount(); i++) {
+                if (buffer.getInt(RADICES + 4 * i) != schema.getValueCount(i)) {
+                    return null;
+                }
+            }
+            int size = (int) schema.size();
+            view.limit(header + 4 * size).position(header);
+            ByteBuffer codes = view.slice();
+            view.limit(view.capacity()).position(getUtilitiesOffset(schema));
+            ByteBuffer utilities = view.slice();
+            return new BidTable(schema, codes.asIntBuffer(), utilities.asDoubleBuffer(), true);
+        }
+    }
+
+    /**
+     * Stores the table of the profile. Only complete tables are stored. The file
+     * is written under another name first and then moved in place, so sessions
+     * running at the same time never map half a table.
+     */
+    public void store(CompiledProfile profile, BidTable table) throws IOException {
+        DomainSchema schema = profile.getSchema();
+        if (!table.isComplete() || table.size() != schema.size()) {
+            return;
+        }
+        Files.createDirectories(this.directory.toPath());
+        byte[] hash = profile.getContentHash();
+        File temporary = File.createTempFile("bidtable", ".tmp", this.directory);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getFileSize(schema));
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(SIZE, table.size());
+                buffer.putInt(ISSUE_COUNT, schema.getIssueCount());
+                ByteBuffer view = buffer.duplicate();
+                view.position(HASH);
+                view.put(hash);
+                for (int i = 0; i < schema.getIssueCount(); i++) {
+                    buffer.putInt(RADICES + 4 * i, schema.getValueCount(i));
+                }
+                view.position(getHeaderSize(schema));
+                view.slice().asIntBuffer().put(table.getCodes());
+                view.position(getUtilitiesOffset(schema));
+                view.slice().asDoubleBuffer().put(table.getUtilities());
+                buffer.force();
+            }
+            Files.move(temporary.toPath(), getFile(hash).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    // The file of the table of the profile
+    public File getFile(CompiledProfile profile) {
+        return getFile(profile.getContentHash());
+    }
+
+    private File getFile(byte[] hash) {
+        return new File(this.directory, ContentHash.toHex(hash) + ".bidtable");
+    }
+
+    private static int getHeaderSize(DomainSchema schema) {
+        return RADICES + 4 * schema.getIssueCount();
+    }
+
+    // The utilities start at a multiple of 8 bytes
+    private static int getUtilitiesOffset(DomainSchema schema) {
+        return (int) ((getHeaderSize(schema) + 4 * schema.size() + 7) & ~7L);
+    }
+
+    private static long getFileSize(DomainSchema schema) {
+        return getUtilitiesOffset(schema) + 8 * schema.size();
+    }
+}
@@ -0,0 +1,134 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+
+import java.math.BigDecimal;
+
+/**
+ * A {@link LinearAdditive} profile compiled against a {@link DomainSchema}: for
+ * every issue a vector with the weighted utility of each value ordinal. The
+ * utility of a bid is then the sum of one array entry per issue, without any
+ * BigDecimal arithmetic. Immutable.
+ */
+public class CompiledProfile {
+
+    private final LinearAdditive profile;
+    private final DomainSchema schema;
+    // weightedUtilities[i][v]: weight of issue i times the utility of its value v
+    private final double[][] weightedUtilities;
+
+    public CompiledProfile(LinearAdditive profile) {
+        this(new DomainSchema(profile.getDomain()), profile);
+    }
+
+    public CompiledProfile(DomainSchema schema, LinearAdditive profile) {
+        this.profile = profile;
+        this.schema = schema;
+        this.weightedUtilities = new double[schema.getIssueCount()][];
+        for (int i = 0; i < schema.getIssueCount(); i++) {
+            String issue = schema.getIssue(i);
+            BigDecimal weight = profile.getWeight(issue);
+            ValueSetUtilities utilities = profile.getUtilities().get(issue);
+            this.weightedUtilities[i] = new double[schema.getValueCount(i)];
+            if (weight == null || utilities == null) {
+                continue; // issue does not count for this profile
+            }
+            for (int v = 0; v < schema.getValueCount(i); v++) {
+                this.weightedUtilities[i][v] = weight.multiply(utilities.getUtility(schema.getValue(i, v))).doubleValue();
+            }
+        }
+    }
+
+    public LinearAdditive getProfile() {
+        return this.profile;
+    }
+
+    public DomainSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return SHA-256 over everything that determines the utilities of the
+     *         bids: the domain, the issues and values and the weighted
+     *         utilities. Equal for equal profiles, also in other sessions.
+     */
+    public byte[] getContentHash() {
+        ContentHash hash = new ContentHash().add(this.schema.getDomain().getName());
+        for (int i = 0; i < this.schema.getIssueCount(); i++) {
+            hash.add(this.schema.getIssue(i)).add(this.schema.getValueCount(i));
+            for (int v = 0; v < this.schema.getValueCount(i); v++) {
+                hash.add(this.schema.getValue(i, v).toString()).add(this.weightedUtilities[i][v]);
+            }
+        }
+        return hash.digest();
+    }
+
+    public double getWeightedUtility(int issue, int ordinal) {
+        return this.weightedUtilities[issue][ordinal];
+    }
+
+    public double getUtility(long code) {
+        // summed in issue order, like everywhere else, so equal bids get equal doubles
+        double utility = 0;
+        for (int i = 0; i < this.weightedUtilities.length; i++) {
+            utility += this.weightedUtilities[i][this.schema.decodeOrdinal(code, i)];
+        }
+        return utility;
+    }
+
+    public double getUtility(int[] ordinals) {
+        double utility = 0;
+        for (int i = 0; i < this.weightedUtilities.length; i++) {
+            utility += this.weightedUtilities[i][ordinals[i]];
+        }
+        return utility;
+    }
+
+    // Bids that are not in the schema are evaluated by the profile itself
+    public double getUtility(Bid bid) {
+        long code = this.schema.encode(bid);
+        return code < 0 ? this.profile.getUtility(bid).doubleValue() : getUtility(code);
+    }
+
+    /**
+     * Writes the utilities of the bids with codes fromCode .. fromCode+count-1
+     * into out[offset] .. out[offset+count-1]. The codes are walked like an
+     * odometer, so only the issues that changed are added up again.
+     */
+    public void fillUtilities(long fromCode, double[] out, int offset, int count) {
+        int issueCount = this.weightedUtilities.length;
+        if (count <= 0) {
+            return;
+        }
+        if (issueCount == 0) {
+            out[offset] = 0;
+            return;
+        }
+        int[] ordinals = new int[issueCount];
+        this.schema.decode(fromCode, ordinals);
+        // partial[i] is the utility summed over the issues before i
+        double[] partial = new double[issueCount];
+        for (int i = 1; i < issueCount; i++) {
+            partial[i] = partial[i - 1] + this.weightedUtilities[i - 1][ordinals[i - 1]];
+        }
+        int last = issueCount - 1;
+        double[] lastUtilities = this.weightedUtilities[last];
+        for (int n = 0; n < count; n++) {
+            out[offset + n] = partial[last] + lastUtilities[ordinals[last]];
+            // advance the odometer
+            int i = last;
+            while (i >= 0 && ++ordinals[i] == this.weightedUtilities[i].length) {
+                ordinals[i] = 0;
+                i--;
+            }
+            if (i < 0) {
+                return; // passed the last bid
+            }
+            for (int j = i + 1; j < issueCount; j++) {
+                partial[j] = partial[j - 1] + this.weightedUtilities[j - 1][ordinals[j - 1]];
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package geniusweb.sampleagent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 over the content of domains and profiles, to recognize the same
+ * domain or profile across sessions.
+ */
+final class ContentHash {
+
+    private final MessageDigest digest;
+    private final ByteBuffer number = ByteBuffer.allocate(8);
+
+    ContentHash() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    // Adds the string with its length, so that different splits give different hashes
+    ContentHash add(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        add(bytes.length);
+        this.digest.update(bytes);
+        return this;
+    }
+
+    ContentHash add(int value) {
+        this.digest.update(this.number.putInt(0, value).array(), 0, 4);
+        return this;
+    }
+
+    ContentHash add(double value) {
+        this.digest.update(this.number.putLong(0, Double.doubleToLongBits(value)).array(), 0, 8);
+        return this;
+    }
+
+    // The hash of everything added. The hash can not be used after this.
+    byte[] digest() {
+        return this.digest.digest();
+    }
+
+    static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,262 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.NumberValueSet;
+import geniusweb.issuevalue.Range;
+import geniusweb.issuevalue.Value;
+import geniusweb.issuevalue.ValueSet;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a {@link Domain}. Issues are numbered in name order and the
+ * values of each issue in the order of its value set, so a bid can be written
+ * as one ordinal per issue, or as a single long code in mixed radix (the last
+ * issue varying fastest). Built once per domain, immutable afterwards.
+ * <p>
+ * A numeric issue with more values than a few is not enumerated: it gets a grid
+ * of values evenly spread over its range, both ends included, so the number of
+ * bids does not grow with the number of steps of the range. Bids with values
+ * between the grid values are not in the schema, but can be encoded to the
+ * nearest grid values.
+ */
+public class DomainSchema {
+
+    // Numeric issues with more values than this get a grid of this many values
+    public static final int MAX_NUMBER_VALUES = 9;
+
+    private final Domain domain;
+    private final String[] issues;
+    private final Value[][] values;
+    private final List<Map<Value, Integer>> valueOrdinals;
+    // ranges[i] is the range of issue i if it has a grid, else null
+    private final Range[] ranges;
+    // strides[i] is the code distance between two successive values of issue i
+    private final long[] strides;
+    private final long size;
+
+    /**
+     * @return a key for the content of the domain: its name, issues and
+     *         values. Equal domains get the same key, also in other sessions.
+     */
+    public static String getKey(Domain domain) {
+        String[] issues = domain.getIssues().toArray(new String[0]);
+        Arrays.sort(issues);
+        ContentHash hash = new ContentHash().add(domain.getName()).add(issues.length);
+        for (String issue : issues) {
+            hash.add(issue);
+            ValueSet valueSet = domain.getValues(issue);
+            Range range = getGridRange(valueSet, MAX_NUMBER_VALUES);
+            if (range != null) {
+                hash.add("grid").add(MAX_NUMBER_VALUES).add(range.getLow().toString())
+                        .add(range.getHigh().toString()).add(range.getStep().toString());
+                continue;
+            }
+            hash.add(valueSet.size().intValueExact());
+            for (Value value : valueSet) {
+                hash.add(value.toString());
+            }
+        }
+        return ContentHash.toHex(hash.digest());
+    }
+
+    public DomainSchema(Domain domain) {
+        this(domain, MAX_NUMBER_VALUES);
+    }
+
+    // @param maxNumberValues numeric issues with more values get a grid of this many, at least 2
+    public DomainSchema(Domain domain, int maxNumberValues) {
+        if (maxNumberValues < 2) {
+            throw new IllegalArgumentException("A grid needs at least 2 values, not " + maxNumberValues);
+        }
+        this.domain = domain;
+        this.issues = domain.getIssues().toArray(new String[0]);
+        Arrays.sort(this.issues);
+        this.values = new Value[this.issues.length][];
+        this.valueOrdinals = new ArrayList<>(this.issues.length);
+        this.ranges = new Range[this.issues.length];
+        for (int i = 0; i < this.issues.length; i++) {
+            ValueSet valueSet = domain.getValues(this.issues[i]);
+            this.ranges[i] = getGridRange(valueSet, maxNumberValues);
+            Iterable<Value> issueValues = this.ranges[i] == null ? valueSet : grid(this.ranges[i], maxNumberValues);
+            int count = this.ranges[i] == null ? valueSet.size().intValueExact() : maxNumberValues;
+            this.values[i] = new Value[count];
+            Map<Value, Integer> ordinals = new HashMap<>(count * 2);
+            int ordinal = 0;
+            for (Value value : issueValues) {
+                this.values[i][ordinal] = value;
+                ordinals.put(value, ordinal);
+                ordinal++;
+            }
+            this.valueOrdinals.add(ordinals);
+        }
+        this.strides = new long[this.issues.length];
+        BigInteger stride = BigInteger.ONE;
+        for (int i = this.issues.length - 1; i >= 0; i--) {
+            this.strides[i] = stride.longValueExact();
+            stride = stride.multiply(BigInteger.valueOf(this.values[i].length));
+        }
+        this.size = stride.longValueExact();
+    }
+
+    // @return the range of the value set if it is numeric and larger than a grid, else null
+    private static Range getGridRange(ValueSet valueSet, int maxNumberValues) {
+        if (!(valueSet instanceof NumberValueSet)
+                || valueSet.size().compareTo(BigInteger.valueOf(maxNumberValues)) <= 0) {
+            return null;
+        }
+        return ((NumberValueSet) valueSet).getRange();
+    }
+
+    // The count values of the range at evenly spread steps, from its lowest to its highest value
+    private static List<Value> grid(Range range, int count) {
+        BigInteger last = range.size().subtract(BigInteger.ONE);
+        List<Value> grid = new ArrayList<>(count);
+        for (int j = 0; j < count; j++) {
+            BigInteger step = last.multiply(BigInteger.valueOf(j)).divide(BigInteger.valueOf(count - 1));
+            grid.add(new NumberValue(range.get(step)));
+        }
+        return grid;
+    }
+
+    public Domain getDomain() {
+        return this.domain;
+    }
+
+    public int getIssueCount() {
+        return this.issues.length;
+    }
+
+    public String getIssue(int issue) {
+        return this.issues[issue];
+    }
+
+    // @return the index of the issue, or -1 if the domain does not have it
+    public int getIssueIndex(String issue) {
+        int index = Arrays.binarySearch(this.issues, issue);
+        return index < 0 ? -1 : index;
+    }
+
+    public int getValueCount(int issue) {
+        return this.values[issue].length;
+    }
+
+    public Value getValue(int issue, int ordinal) {
+        return this.values[issue][ordinal];
+    }
+
+    // @return the range of the numeric issue if its values are a grid over it, else null
+    public Range getGridRange(int issue) {
+        return this.ranges[issue];
+    }
+
+    // @return the ordinal of the value in the issue, or -1 if the issue does not have it
+    public int getOrdinal(int issue, Value value) {
+        Integer ordinal = this.valueOrdinals.get(issue).get(value);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (value instanceof NumberValue) {
+            // numbers with another scale (900 vs 900.0) do not hash alike
+            BigDecimal number = ((NumberValue) value).getValue();
+            for (int i = 0; i < this.values[issue].length; i++) {
+                Value candidate = this.values[issue][i];
+                if (candidate instanceof NumberValue && ((NumberValue) candidate).getValue().compareTo(number) == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Total number of bids in the domain
+    public long size() {
+        return this.size;
+    }
+
+    public long getStride(int issue) {
+        return this.strides[issue];
+    }
+
+    // @return the code of the bid, or -1 if the bid is partial or not in the domain
+    public long encode(Bid bid) {
+        long code = 0;
+        for (int i = 0; i < this.issues.length; i++) {
+            Value value = bid.getValue(this.issues[i]);
+            int ordinal = value == null ? -1 : getOrdinal(i, value);
+            if (ordinal < 0) {
+                return -1;
+            }
+            code += ordinal * this.strides[i];
+        }
+        return code;
+    }
+
+    /**
+     * Like {@link #encode(Bid)}, but numeric values between the values of a
+     * grid are encoded as the nearest grid value, the lower one if they are as
+     * near.
+     *
+     * @return the code of the nearest bid in the schema, or -1 if the bid is
+     *         partial or has a value that is not in the domain
+     */
+    public long encodeNearest(Bid bid) {
+        long code = 0;
+        for (int i = 0; i < this.issues.length; i++) {
+            Value value = bid.getValue(this.issues[i]);
+            int ordinal = value == null ? -1 : getOrdinal(i, value);
+            if (ordinal < 0 && this.ranges[i] != null && value instanceof NumberValue
+                    && this.domain.getValues(this.issues[i]).contains(value)) {
+                ordinal = getNearestOrdinal(i, ((NumberValue) value).getValue());
+            }
+            if (ordinal < 0) {
+                return -1;
+            }
+            code += ordinal * this.strides[i];
+        }
+        return code;
+    }
+
+    // The ordinal of the grid value nearest to the number, which is in the range
+    private int getNearestOrdinal(int issue, BigDecimal number) {
+        Value[] grid = this.values[issue];
+        int high = 1;
+        while (high < grid.length - 1 && ((NumberValue) grid[high]).getValue().compareTo(number) < 0) {
+            high++;
+        }
+        BigDecimal below = number.subtract(((NumberValue) grid[high - 1]).getValue());
+        BigDecimal above = ((NumberValue) grid[high]).getValue().subtract(number);
+        return above.compareTo(below) < 0 ? high : high - 1;
+    }
+
+    public int decodeOrdinal(long code, int issue) {
+        return (int) ((code / this.strides[issue]) % this.values[issue].length);
+    }
+
+    // Writes the value ordinals of the bid with the given code into ordinals
+    public void decode(long code, int[] ordinals) {
+        for (int i = this.issues.length - 1; i >= 0; i--) {
+            int count = this.values[i].length;
+            ordinals[i] = (int) (code % count);
+            code /= count;
+        }
+    }
+
+    public Bid decode(long code) {
+        Map<String, Value> issueValues = new HashMap<>(this.issues.length * 2);
+        for (int i = this.issues.length - 1; i >= 0; i--) {
+            int count = this.values[i].length;
+            issueValues.put(this.issues[i], this.values[i][(int) (code % count)]);
+            code /= count;
+        }
+        return new Bid(issueValues);
+    }
+}
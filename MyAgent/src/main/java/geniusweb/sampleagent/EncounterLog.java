@@ -0,0 +1,360 @@
+package geniusweb.sampleagent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary log of negotiation encounters, written and read through a
+ * memory mapped file. An encounter holds the opponent's party name, the domain
+ * name and the number of values of each issue, the number of rounds, the
+ * outcome and the opponent's offers as {@link DomainSchema} codes.
+ * <p>
+ * The file starts with a header holding the end of the committed records. A
+ * record is written behind that end and only becomes part of the log when it
+ * is committed, so a crash never leaves a half written record in the log. The
+ * records are read with a {@link Cursor} straight from the mapped file.
+ * <p>
+ * Not thread safe.
+ */
+public class EncounterLog implements Closeable {
+
+    private static final int MAGIC = 0x4d41454c; // "MAEL"
+    private static final int VERSION = 1;
+    // header: magic, version, end of the committed records, number of records
+    private static final int END = 8;
+    private static final int COUNT = 16;
+    private static final int HEADER_SIZE = 32;
+    private static final int INITIAL_SIZE = 1 << 16;
+
+    // record: length, number of offers, rounds, agreement, utility, opponent, domain, radices, offers
+    private static final int LENGTH = 0;
+    private static final int OFFER_COUNT = 4;
+    private static final int ROUNDS = 8;
+    private static final int AGREEMENT = 12;
+    private static final int UTILITY = 20;
+    private static final int OPPONENT = 28;
+
+    private final FileChannel channel;
+    private final boolean writable;
+    private MappedByteBuffer buffer;
+    // start of the record being written, -1 if there is none
+    private int record = -1;
+    // end of the record being written
+    private int position;
+
+    private EncounterLog(FileChannel channel, boolean writable) throws IOException {
+        this.channel = channel;
+        this.writable = writable;
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Encounter log too large: " + size);
+        }
+        if (writable && size == 0) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_SIZE);
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putInt(4, VERSION);
+            this.buffer.putLong(END, HEADER_SIZE);
+            this.buffer.putInt(COUNT, 0);
+        } else {
+            this.buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0,
+                    size);
+            if (size < HEADER_SIZE || this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+                throw new IOException("Not an encounter log");
+            }
+        }
+    }
+
+    // Opens the log to append to, the file is created if it does not exist
+    public static EncounterLog open(File file) throws IOException {
+        return open(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE), true);
+    }
+
+    public static EncounterLog openReadOnly(File file) throws IOException {
+        return open(FileChannel.open(file.toPath(), StandardOpenOption.READ), false);
+    }
+
+    private static EncounterLog open(FileChannel channel, boolean writable) throws IOException {
+        try {
+            return new EncounterLog(channel, writable);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Number of committed records
+    public int getCount() {
+        return this.buffer.getInt(COUNT);
+    }
+
+    // @return a cursor before the first of the records that are committed now
+    public Cursor cursor() {
+        return cursor(HEADER_SIZE);
+    }
+
+    /**
+     * @param from the position of a record, see {@link Cursor#getPosition()}, or
+     *             {@link #getEnd()}
+     * @return a cursor before the record at from
+     */
+    public Cursor cursor(long from) {
+        long end = getEnd();
+        if (from < HEADER_SIZE || from > end) {
+            throw new IllegalArgumentException("No record at " + from);
+        }
+        return new Cursor(this.buffer.duplicate(), (int) from, (int) end);
+    }
+
+    // Position after the last committed record
+    public long getEnd() {
+        return this.buffer.getLong(END);
+    }
+
+    // True between begin and commit or abort
+    public boolean isWriting() {
+        return this.record >= 0;
+    }
+
+    /**
+     * Starts a new record. Offers can be added until the record is committed.
+     *
+     * @param opponent the name of the opponent party
+     * @param schema   the schema of the domain the offers are encoded with
+     */
+    public void begin(String opponent, DomainSchema schema) throws IOException {
+        if (!this.writable) {
+            throw new IllegalStateException("Encounter log is read only");
+        }
+        if (this.record >= 0) {
+            throw new IllegalStateException("Previous record was not committed");
+        }
+        byte[] name = opponent.getBytes(StandardCharsets.UTF_8);
+        byte[] domain = schema.getDomain().getName().getBytes(StandardCharsets.UTF_8);
+        int issueCount = schema.getIssueCount();
+        int start = (int) this.buffer.getLong(END);
+        ensureCapacity(start + OPPONENT + 2 + name.length + 2 + domain.length + 4 + 4 * issueCount);
+        this.record = start;
+        this.position = start + OPPONENT;
+        putString(name);
+        putString(domain);
+        this.buffer.putInt(this.position, issueCount);
+        this.position += 4;
+        for (int i = 0; i < issueCount; i++) {
+            this.buffer.putInt(this.position, schema.getValueCount(i));
+            this.position += 4;
+        }
+        this.buffer.putInt(this.record + OFFER_COUNT, 0);
+    }
+
+    // Adds an offer of the opponent to the record being written
+    public void addOffer(long code) throws IOException {
+        if (this.record < 0) {
+            throw new IllegalStateException("No record to add to");
+        }
+        ensureCapacity(this.position + 8);
+        this.buffer.putLong(this.position, code);
+        this.position += 8;
+        int offers = this.record + OFFER_COUNT;
+        this.buffer.putInt(offers, this.buffer.getInt(offers) + 1);
+    }
+
+    /**
+     * Finishes the record being written and adds it to the log.
+     *
+     * @param rounds    the number of rounds that were played
+     * @param agreement the code of the agreed bid, -1 if there was no agreement
+     * @param utility   our utility of the outcome
+     */
+    public void commit(int rounds, long agreement, double utility) {
+        if (this.record < 0) {
+            throw new IllegalStateException("No record to commit");
+        }
+        this.buffer.putInt(this.record + ROUNDS, rounds);
+        this.buffer.putLong(this.record + AGREEMENT, agreement);
+        this.buffer.putDouble(this.record + UTILITY, utility);
+        this.buffer.putInt(this.record + LENGTH, this.position - this.record);
+        commitRecord();
+    }
+
+    // Drops the record being written
+    public void abort() {
+        this.record = -1;
+    }
+
+    // Appends a copy of the record under the cursor, which may be from another log
+    public void append(Cursor cursor) throws IOException {
+        if (!this.writable) {
+            throw new IllegalStateException("Encounter log is read only");
+        }
+        if (this.record >= 0) {
+            throw new IllegalStateException("Previous record was not committed");
+        }
+        int length = cursor.getLength();
+        this.record = (int) this.buffer.getLong(END);
+        ensureCapacity(this.record + length);
+        ByteBuffer source = cursor.view.duplicate();
+        source.limit(cursor.record + length).position(cursor.record);
+        ByteBuffer target = this.buffer.duplicate();
+        target.position(this.record);
+        target.put(source);
+        this.position = this.record + length;
+        commitRecord();
+    }
+
+    private void commitRecord() {
+        this.buffer.putLong(END, this.position);
+        this.buffer.putInt(COUNT, this.buffer.getInt(COUNT) + 1);
+        this.record = -1;
+    }
+
+    private void putString(byte[] bytes) throws IOException {
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IOException("Name too long for the encounter log");
+        }
+        this.buffer.putShort(this.position, (short) bytes.length);
+        this.position += 2;
+        ByteBuffer target = this.buffer.duplicate();
+        target.position(this.position);
+        target.put(bytes);
+        this.position += bytes.length;
+    }
+
+    private void ensureCapacity(long size) throws IOException {
+        if (size <= this.buffer.capacity()) {
+            return;
+        }
+        long capacity = Math.max(size, 2L * this.buffer.capacity());
+        if (capacity > Integer.MAX_VALUE) {
+            capacity = Integer.MAX_VALUE;
+            if (size > capacity) {
+                throw new IOException("Encounter log is full");
+            }
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.writable) {
+            this.buffer.force();
+        }
+        this.channel.close();
+    }
+
+    /**
+     * Walks over the records of a log. The getters read straight from the
+     * mapped file and only the names are copied.
+     */
+    public static class Cursor {
+        private final ByteBuffer view;
+        private final int start;
+        private final int end;
+        // start of the current record, -1 before the first
+        private int record = -1;
+        private int domain;
+        private int radices;
+        private int offers;
+
+        private Cursor(ByteBuffer view, int start, int end) {
+            this.view = view;
+            this.start = start;
+            this.end = end;
+        }
+
+        // Moves to the next record. @return false if there are no more records
+        public boolean next() {
+            int next = this.record < 0 ? this.start : this.record + getLength();
+            if (next >= this.end) {
+                return false;
+            }
+            this.record = next;
+            this.domain = next + OPPONENT + 2 + this.view.getShort(next + OPPONENT);
+            this.radices = this.domain + 2 + this.view.getShort(this.domain) + 4;
+            this.offers = this.radices + 4 * getIssueCount();
+            return true;
+        }
+
+        // Position of the record in the log
+        public long getPosition() {
+            return this.record;
+        }
+
+        // Length of the record in bytes
+        public int getLength() {
+            return this.view.getInt(this.record + LENGTH);
+        }
+
+        public String getOpponent() {
+            return getString(this.record + OPPONENT);
+        }
+
+        public String getDomain() {
+            return getString(this.domain);
+        }
+
+        public int getIssueCount() {
+            return this.view.getInt(this.radices - 4);
+        }
+
+        // Number of values of the issue, issues are in the order of the DomainSchema
+        public int getRadix(int issue) {
+            return this.view.getInt(this.radices + 4 * issue);
+        }
+
+        // True if the domain has the same issues and values counts as the schema
+        public boolean matches(DomainSchema schema) {
+            if (getIssueCount() != schema.getIssueCount() || !getDomain().equals(schema.getDomain().getName())) {
+                return false;
+            }
+            for (int i = 0; i < schema.getIssueCount(); i++) {
+                if (getRadix(i) != schema.getValueCount(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int getRounds() {
+            return this.view.getInt(this.record + ROUNDS);
+        }
+
+        // Code of the agreed bid, -1 if there was no agreement
+        public long getAgreement() {
+            return this.view.getLong(this.record + AGREEMENT);
+        }
+
+        public boolean hasAgreement() {
+            return getAgreement() >= 0;
+        }
+
+        // Our utility of the outcome
+        public double getUtility() {
+            return this.view.getDouble(this.record + UTILITY);
+        }
+
+        public int getOfferCount() {
+            return this.view.getInt(this.record + OFFER_COUNT);
+        }
+
+        // The code of the n-th offer of the opponent
+        public long getOffer(int n) {
+            return this.view.getLong(this.offers + 8 * n);
+        }
+
+        private String getString(int position) {
+            int length = this.view.getShort(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer source = this.view.duplicate();
+            source.position(position + 2);
+            source.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package geniusweb.sampleagent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in ns with log-linear buckets, like an HDR histogram:
+ * every power of 2 is split into {@value #SUB_BUCKETS} buckets, so a value is
+ * counted within about 3% of what it was, from 1 ns up to hours. Recording is
+ * one increment of a bucket plus striped updates of the total and the maximum,
+ * it does not allocate or lock.
+ * <p>
+ * Thread safe. A snapshot taken while values are recorded may miss some of
+ * them.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // values from 2^(MAX_SHIFT + SUB_BITS + 1) ns, about 39 hours, go in the last bucket
+    private static final int MAX_SHIFT = 41;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_SHIFT + 2) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // @param nanos the latency, negative values count as 0
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(index(value));
+        this.total.add(value);
+        this.max.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[this.counts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.counts.get(i);
+        }
+        return new Snapshot(counts, this.total.sum(), this.max.get());
+    }
+
+    // Bucket of the value: values below 2 * SUB_BUCKETS have their own, above that they share by magnitude
+    static int index(long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if (shift <= 0) {
+            return (int) value;
+        }
+        if (shift > MAX_SHIFT) {
+            return (MAX_SHIFT + 2) * SUB_BUCKETS - 1;
+        }
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // The lowest value that goes in the bucket
+    static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index - shift * SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * The counts of a histogram at one moment. Values are reported in ms.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long total, long max) {
+            this.counts = counts;
+            long count = 0;
+            for (long bucket : counts) {
+                count += bucket;
+            }
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        // Number of values recorded
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMeanMillis() {
+            return this.count == 0 ? 0 : this.total / 1e6 / this.count;
+        }
+
+        public double getMaxMillis() {
+            return this.max / 1e6;
+        }
+
+        public double getP50Millis() {
+            return getPercentileMillis(50);
+        }
+
+        public double getP90Millis() {
+            return getPercentileMillis(90);
+        }
+
+        public double getP99Millis() {
+            return getPercentileMillis(99);
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return the lowest value in the bucket of the value at the percentile,
+         *         not more than the maximum
+         */
+        public double getPercentileMillis(double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(lowestValue(i), this.max) / 1e6;
+                }
+            }
+            return this.max / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms", this.count,
+                    getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+        }
+    }
+}
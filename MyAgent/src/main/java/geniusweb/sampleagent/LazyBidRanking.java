@@ -0,0 +1,92 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+
+import java.util.Arrays;
+
+/**
+ * {@link BidRanking} that pulls bids from a {@link BidGenerator} only when a
+ * rank is asked for, so domains far too large to enumerate can still be used.
+ * The bids pulled so far are kept as codes and utilities.
+ */
+public class LazyBidRanking implements BidRanking {
+
+    private final BidGenerator generator;
+    private final BidGenerator.Descending cursor;
+    private final int size;
+    private long[] codes = new long[64];
+    private double[] utilities = new double[64];
+    // number of bids pulled from the cursor
+    private int pulled = 0;
+
+    public LazyBidRanking(CompiledProfile profile) {
+        this.generator = new BidGenerator(profile);
+        this.cursor = this.generator.descending();
+        this.size = (int) Math.min(profile.getSchema().size(), Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    // Number of bids generated so far
+    public int getPulled() {
+        return this.pulled;
+    }
+
+    @Override
+    public Bid getBid(int rank) {
+        return this.generator.getSchema().decode(getCode(rank));
+    }
+
+    @Override
+    public long getCode(int rank) {
+        pull(rank);
+        return this.codes[rank];
+    }
+
+    @Override
+    public double getUtility(int rank) {
+        pull(rank);
+        return this.utilities[rank];
+    }
+
+    @Override
+    public int countAtLeast(double threshold, int limit) {
+        limit = Math.max(0, Math.min(limit, this.size));
+        if (limit <= this.pulled || (this.pulled > 0 && this.utilities[this.pulled - 1] < threshold)) {
+            // the boundary or the limit is among the pulled bids
+            int low = 0, high = Math.min(limit, this.pulled);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.utilities[mid] >= threshold) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        return (int) this.generator.countAtLeast(threshold, limit);
+    }
+
+    private void pull(int rank) {
+        if (rank < 0 || rank >= this.size) {
+            throw new IndexOutOfBoundsException("rank " + rank);
+        }
+        while (this.pulled <= rank) {
+            if (!this.cursor.next()) {
+                throw new IllegalStateException("Generator ended before rank " + rank);
+            }
+            if (this.pulled == this.codes.length) {
+                int capacity = (int) Math.min((long) this.codes.length * 2, Integer.MAX_VALUE - 8);
+                this.codes = Arrays.copyOf(this.codes, capacity);
+                this.utilities = Arrays.copyOf(this.utilities, capacity);
+            }
+            this.codes[this.pulled] = this.cursor.getCode();
+            this.utilities[this.pulled] = this.cursor.getUtility();
+            this.pulled++;
+        }
+    }
+}
@@ -1,33 +1,239 @@
 package geniusweb.sampleagent;
 
-import geniusweb.actions.Offer;
-import geniusweb.inform.Inform;
-import geniusweb.issuevalue.Bid;
-import geniusweb.party.DefaultParty;
 import tudelft.utilities.logging.Reporter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
+/**
+ * Learning phase of the agent. Collects the encounters that the negotiation
+ * sessions wrote into the {@link EncounterLog} in the persistent state, and
+ * learns an {@link OpponentPrior} per opponent and domain from them.
+ * <p>
+ * The priors are saved in a {@link PriorStore} together with the position in
+ * the log up to which they were learned, so every run only processes the
+ * encounters added since the last one. The new encounters are grouped per
+ * opponent and the groups are processed in parallel.
+ * <p>
+ * The session logs stay where they are, so the number of encounters taken from
+ * each of them is kept in a sessions file. A session log is then only appended
+ * once, also when a later Learn run gets it again.
+ */
 public class Learner {
-    public Reporter reporter;
 
-    private ArrayList<ArrayList<Offer>> info_pool;
+    private static final int SESSIONS_MAGIC = 0x4d415353; // "MASS"
+    private static final int SESSIONS_VERSION = 1;
 
+    private final Reporter reporter;
+    private final ForkJoinPool pool;
+    private final Map<String, OpponentPrior> priors = new HashMap<>();
+    // position in the encounter log up to which the priors were learned
+    private long checkpoint = -1;
 
-    public Learner() {
-        this.info_pool = new ArrayList<>();
+    public Learner(Reporter reporter) {
+        this(reporter, ForkJoinPool.commonPool());
     }
 
-    protected void appendInfo(ArrayList<Offer> info) {
-        this.info_pool.add(info);
-        this.reporter.log(Level.INFO, info_pool.toString());
-//        this.reporter.log(Level.INFO, this.info_pool.get(0).get(0).getActor().toString());
-//        this.reporter.log(Level.INFO, Integer.toString(this.info_pool.get(0).size()));
+    public Learner(Reporter reporter, ForkJoinPool pool) {
+        this.reporter = reporter;
+        this.pool = pool;
     }
 
-    protected void processEncounter() {
-        // process data in learning phase
+    /**
+     * Appends the encounters in the session logs to the log, except the ones
+     * that an earlier run already appended.
+     *
+     * @param sessionFiles the logs of the sessions, files that do not exist are
+     *                     skipped
+     * @param sessions     the file with the number of encounters taken from each
+     *                     session log, created if it does not exist
+     * @return the number of encounters appended
+     */
+    public int appendEncounters(EncounterLog log, List<File> sessionFiles, File sessions) throws IOException {
+        Map<String, Integer> taken = loadSessions(sessions);
+        int appended = 0;
+        for (File file : sessionFiles) {
+            if (!file.exists()) {
+                continue;
+            }
+            String name = file.getName();
+            int skip = taken.getOrDefault(name, 0);
+            int records = 0;
+            try (EncounterLog session = EncounterLog.openReadOnly(file)) {
+                EncounterLog.Cursor cursor = session.cursor();
+                while (cursor.next()) {
+                    if (records >= skip) {
+                        log.append(cursor);
+                        appended++;
+                    }
+                    records++;
+                }
+            } catch (IOException e) {
+                this.reporter.log(Level.WARNING, "Skipping session log " + file + ": " + e.getMessage());
+            } finally {
+                // up to where it failed, the encounters were appended
+                taken.put(name, Math.max(skip, records));
+            }
+        }
+        saveSessions(sessions, taken);
+        this.reporter.log(Level.INFO, "Learned " + appended + " encounters, " + log.getCount() + " in total");
+        return appended;
+    }
+
+    /**
+     * Learns from the encounters in the log that were added since the priors
+     * were saved, and saves the priors again.
+     *
+     * @param priorsFile the file with the priors, created if it does not exist
+     * @return the number of encounters processed
+     */
+    public int processEncounter(EncounterLog log, File priorsFile) throws IOException {
+        if (priorsFile.exists()) {
+            load(priorsFile);
+        }
+        if (this.checkpoint < 0 || this.checkpoint > log.getEnd()) {
+            // no priors yet, or they belong to another log
+            this.priors.clear();
+            this.checkpoint = -1;
+        }
+        // positions of the new encounters per prior key
+        Map<String, List<Long>> groups = new HashMap<>();
+        EncounterLog.Cursor cursor = this.checkpoint < 0 ? log.cursor() : log.cursor(this.checkpoint);
+        int processed = 0;
+        while (cursor.next()) {
+            String key = OpponentPrior.getKey(cursor.getOpponent(), cursor.getDomain());
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(cursor.getPosition());
+            processed++;
+        }
+
+        List<Callable<OpponentPrior>> tasks = new ArrayList<>();
+        for (List<Long> positions : groups.values()) {
+            tasks.add(() -> learn(log, positions));
+        }
+        try {
+            for (Future<OpponentPrior> future : this.pool.invokeAll(tasks)) {
+                OpponentPrior learned = future.get();
+                OpponentPrior prior = this.priors.get(learned.getKey());
+                if (prior == null || !prior.isCompatible(learned)) {
+                    // the domain changed, the old prior is of no use anymore
+                    this.priors.put(learned.getKey(), learned);
+                } else {
+                    prior.merge(learned);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while learning", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to learn", e.getCause());
+        }
+        this.checkpoint = log.getEnd();
+        save(priorsFile);
+        this.reporter.log(Level.INFO, "Processed " + processed + " encounters with " + groups.size()
+                + " opponents, " + this.priors.size() + " priors");
+        return processed;
+    }
+
+    // The prior learned for the opponent in the domain, null if there is none
+    public OpponentPrior getPrior(String opponent, String domain) {
+        return this.priors.get(OpponentPrior.getKey(opponent, domain));
+    }
+
+    public Map<String, OpponentPrior> getPriors() {
+        return this.priors;
+    }
+
+    /*
+     * Learns from the encounters of one opponent in one domain. A domain can
+     * change between tournaments but keep its name, the prior is for the
+     * domain of the newest encounter and the others are skipped.
+     */
+    private static OpponentPrior learn(EncounterLog log, List<Long> positions) {
+        OpponentPrior prior = null;
+        for (int n = positions.size() - 1; n >= 0; n--) {
+            EncounterLog.Cursor cursor = log.cursor(positions.get(n));
+            cursor.next();
+            if (prior == null) {
+                prior = OpponentPrior.of(cursor);
+            }
+            if (prior.matches(cursor)) {
+                prior.add(cursor);
+            }
+        }
+        return prior;
+    }
+
+    // The number of encounters taken per session log name, empty if the file does not exist or is unreadable
+    private Map<String, Integer> loadSessions(File file) {
+        Map<String, Integer> taken = new HashMap<>();
+        if (!file.exists()) {
+            return taken;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SESSIONS_MAGIC || in.readInt() != SESSIONS_VERSION) {
+                throw new IOException("Not a sessions file");
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                taken.put(in.readUTF(), in.readInt());
+            }
+        } catch (IOException e) {
+            this.reporter.log(Level.WARNING, "Ignoring sessions in " + file + ": " + e.getMessage());
+            taken.clear();
+        }
+        return taken;
+    }
+
+    private static void saveSessions(File file, Map<String, Integer> taken) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(SESSIONS_MAGIC);
+            out.writeInt(SESSIONS_VERSION);
+            out.writeInt(taken.size());
+            for (Map.Entry<String, Integer> session : taken.entrySet()) {
+                out.writeUTF(session.getKey());
+                out.writeInt(session.getValue());
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void load(File file) throws IOException {
+        this.priors.clear();
+        this.checkpoint = -1;
+        PriorStore store;
+        try {
+            store = PriorStore.open(file);
+        } catch (IOException e) {
+            this.reporter.log(Level.WARNING, "Ignoring priors in " + file + ": " + e.getMessage());
+            return;
+        }
+        for (OpponentPrior prior : store.getAll()) {
+            this.priors.put(prior.getKey(), prior);
+        }
+        this.checkpoint = store.getCheckpoint();
+    }
 
+    private void save(File file) throws IOException {
+        PriorStore.write(file, this.priors.values(), this.checkpoint);
     }
 }
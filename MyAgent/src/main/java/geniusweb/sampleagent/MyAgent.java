@@ -2,12 +2,12 @@ package geniusweb.sampleagent;
 
 import geniusweb.actions.Accept;
 import geniusweb.actions.Action;
+import geniusweb.actions.FileLocation;
+import geniusweb.actions.LearningDone;
 import geniusweb.actions.Offer;
 import geniusweb.actions.PartyId;
-import geniusweb.bidspace.AllBidsList;
 import geniusweb.issuevalue.Bid;
 import geniusweb.issuevalue.Domain;
-import geniusweb.issuevalue.Value;
 import geniusweb.party.Capabilities;
 import geniusweb.party.DefaultParty;
 import geniusweb.inform.ActionDone;
@@ -16,17 +16,27 @@ import geniusweb.inform.Inform;
 import geniusweb.inform.Settings;
 import geniusweb.inform.YourTurn;
 import geniusweb.profile.Profile;
-import geniusweb.profile.utilityspace.UtilitySpace;
+import geniusweb.profile.utilityspace.LinearAdditive;
 import geniusweb.profileconnection.ProfileConnectionFactory;
 import geniusweb.profileconnection.ProfileInterface;
 import geniusweb.progress.Progress;
 import geniusweb.progress.ProgressRounds;
+import geniusweb.references.Parameters;
 import tudelft.utilities.logging.Reporter;
 
 import javax.websocket.DeploymentException;
+import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 
 /*
@@ -38,42 +48,134 @@ public class MyAgent extends DefaultParty {
 
     // ID of our agent
     private PartyId partyId;
+    // Logs to the reporter in the background
+    private AgentLog agentLog;
+    // System time in ms, replays of a trace get the recorded times
+    private final LongSupplier clock;
+    // Records the session if the "traceFile" parameter is set
+    private volatile TraceRecorder trace;
 
     private Domain domain;
-    private AllBidsList allBidsList;
 
     protected ProfileInterface profileInterface;
     private Profile profile;
-    // Utility value of all possible bids according to our profile
-    private HashMap<Bid, BigDecimal> bidsUtilityMap = new HashMap<>();
+    // Our profile compiled to arrays, and the issue and value ordinals it uses
+    private CompiledProfile compiledProfile;
+    private DomainSchema schema;
+    // Our holds on the schema and bid table shared with other agents in this JVM
+    private SharedPrecomputation.Handle<DomainSchema> schemaHandle;
+    private SharedPrecomputation.Handle<BidTable> tableHandle;
+    // This session in the metrics of the JVM
+    private volatile AgentMetrics.Session metrics;
+    // All possible bids, sorted on their utility value according to our profile
+    private BidRanking bidRanking;
+    // Bids we offered, so that offering one again does not decode it again
+    private BidCache bidCache;
+    // Sets the numeric issues of our offers between the values of their grid
+    private NumberRefiner numberRefiner;
+    // Pareto frontier of our best bids and their estimated opponent utility
+    private ParetoFrontier paretoFrontier;
+    private NashTracker nashTracker;
+    // Index of our best bids by value, only if the "nearestOffers" parameter is true
+    private ValueIndex valueIndex;
+    private double[] opponentWeights;
 
     private Progress progress;
+    // Progress of the turn that the worker is planning
+    private Progress turnProgress;
     // Current time in the negotiation
     private double time = 0.0;
 
     // Last received bid from the opponent
     private Bid lastReceivedBid = null;
-    // History of the received offers during the negotiation session
-    private List<Bid> receivedOffers = new ArrayList<>();
+    // DomainSchema code of lastReceivedBid or the nearest bid on the grid, -1 if it is not in the domain
+    private long lastReceivedCode = -1;
+    // Our utility of lastReceivedBid
+    private double lastReceivedUtility = 0;
+    // True if lastReceivedBid did not go into the history and model yet
+    private boolean lastReceivedNew = false;
+    // The last received offers and the decayed average of our utility of all of them
+    private OfferHistory offerHistory;
 
     private final Random random = new Random();
-    // Minimum utility value of a bid that the agent offers or accepts.
+    // Minimum utility value of a bid that the agent offers or accepts. Each plan sets it before it reads it.
     private double acceptableUtilityValue = 1.0;
 
-    private HashMap<String, Value[]> issueList = new HashMap<>();
-    private HashMap<String, Double> issueWeights = new HashMap<>();
-    private ArrayList<Object[]> issueValueList = new ArrayList<>();
-
-    private List<Bid> opponentBids = null;
+    // Plans our turns, all state below is only used on this thread after init
+    private Worker worker;
+    // Action for our next turn, being planned since the opponent's offer came in
+    private Future<Action> plannedAction;
+    // Fallbacks in case the planned action is not ready in time
+    private volatile Bid bestBid;
+    // The bid of our last offer that was sent, only used on the turn thread
+    private Bid lastOfferedBid;
+
+    // Log of this session's encounter, empty if the session is not logged. Whoever takes it out closes it.
+    private final AtomicReference<EncounterLog> encounterLog = new AtomicReference<>();
+    // Priors learned from earlier encounters, null if there are none
+    private PriorStore priorStore;
+    // The opponent, known after its first offer
+    private PartyId opponent;
+    // Number of turns we took
+    private int turns = 0;
+
+    // Frequency model of the opponent's preferences
+    private OpponentModel opponentModel;
+    // Model version the opponent utilities in the Pareto frontier are based on
+    private long frontierModelVersion = -1;
 
     private static final int kValue = 3;
+    // Maximum number of bids for which the full sorted bid table is built on the heap
+    private static final long MAX_TABLE_SIZE = 1 << 22;
+    // Maximum direct memory an off heap table may take while it is built: 384MB for a table of 1 << 25 bids,
+    // and as much again for the scratch space of the merges. Tables go off heap only when "offHeapBids" is set.
+    private static final long MAX_OFF_HEAP_BYTES = 768L << 20;
+    // Maximum number of our best bids that are considered for the Pareto frontier. Each model update
+    // re-estimates all of them, and a lazy ranking has to generate them first, so it stays well inside a turn.
+    private static final int MAX_PARETO_CANDIDATES = 1 << 16;
+    private static final int BID_CACHE_SIZE = 64;
+    // Part of the remaining session time that building the bid table may take
+    private static final double INIT_TIME_FRACTION = 0.1;
+    // Defaults of the session parameters for the offer history
+    private static final int DEFAULT_HISTORY_CAPACITY = 256;
+    private static final double DEFAULT_HISTORY_DECAY = 0.95;
+    // Maximum time a turn waits for the worker before it falls back
+    private static final long TURN_WAIT_MILLIS = 200;
+    // Level below which nothing is logged, unless the "logLevel" parameter says otherwise
+    private static final Level DEFAULT_LOG_LEVEL = Level.INFO;
+
+    // The session parameters MyAgent reads
+    static final String PERSISTENT_STATE = "persistentstate";
+    static final String NEGOTIATION_DATA = "negotiationdata";
+    static final String BID_TABLE_CACHE = "bidTableCache";
+    static final String HISTORY_CAPACITY = "historyCapacity";
+    static final String HISTORY_DECAY = "historyDecay";
+    static final String LOG_LEVEL = "logLevel";
+    static final String TRACE_FILE = "traceFile";
+    static final String OFF_HEAP_BIDS = "offHeapBids";
+    static final String NEAREST_OFFERS = "nearestOffers";
+    // All of them, the real Parameters can not be iterated so a trace records these
+    static final String[] PARAMETERS = { PERSISTENT_STATE, NEGOTIATION_DATA, BID_TABLE_CACHE, HISTORY_CAPACITY,
+            HISTORY_DECAY, LOG_LEVEL, TRACE_FILE, OFF_HEAP_BIDS, NEAREST_OFFERS };
+
+    // Schemas per domain and bid tables per profile, shared by the agents in this JVM
+    private static final SharedPrecomputation<String, DomainSchema> SCHEMAS = new SharedPrecomputation<>();
+    private static final SharedPrecomputation<String, BidTable> TABLES = new SharedPrecomputation<>();
+    private static final AgentMetrics METRICS = AgentMetrics.getInstance();
 
     public MyAgent() {
+        this.clock = System::currentTimeMillis;
     }
 
     public MyAgent(Reporter reporter) {
         // Reporter is used for debugging
+        this(reporter, System::currentTimeMillis);
+    }
+
+    // For replays: the agent reads the time from the clock
+    MyAgent(Reporter reporter, LongSupplier clock) {
         super(reporter);
+        this.clock = clock;
     }
 
     @Override
@@ -82,10 +184,16 @@ public class MyAgent extends DefaultParty {
             if (info instanceof Settings) {
                 Settings settings = (Settings) info;
                 init(settings);
-            } else if (info instanceof ActionDone) {
+                return;
+            }
+            if (this.trace != null) {
+                this.trace.inform(info);
+            }
+            if (info instanceof ActionDone) {
                 Action action = ((ActionDone) info).getAction();
-                if (action instanceof Offer) {
-                    this.lastReceivedBid = ((Offer) action).getBid();
+                // our own actions are reported too
+                if (action instanceof Offer && !action.getActor().equals(this.partyId)) {
+                    planTurn((Offer) action);
                 }
             } else if (info instanceof YourTurn) {
                 if (progress instanceof ProgressRounds) {
@@ -93,16 +201,29 @@ public class MyAgent extends DefaultParty {
                 }
                 myTurn();
             } else if (info instanceof Finished) {
-                getReporter().log(Level.INFO, "Final outcome:" + info);
+                this.agentLog.log(Level.INFO, "Final outcome:{}", info);
+                finish(((Finished) info).getAgreement().getMap().get(this.partyId));
+                closeTrace();
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to handle info", e);
         }
     }
 
+    @Override
+    public void terminate() {
+        stopWorker();
+        releaseShared();
+        closeTrace();
+        if (this.agentLog != null) {
+            this.agentLog.close();
+        }
+        super.terminate();
+    }
+
     @Override
     public Capabilities getCapabilities() {
-        return new Capabilities(new HashSet<>(Arrays.asList("SAOP", "Learn")), Collections.singleton(Profile.class));
+        return new Capabilities(new HashSet<>(Arrays.asList("SAOP", "Learn")), Collections.singleton(LinearAdditive.class));
     }
 
     @Override
@@ -114,340 +235,684 @@ public class MyAgent extends DefaultParty {
 
     // Called at the beginning of the negotiation session
     private void init(Settings settings) throws IOException, DeploymentException {
-        this.profileInterface = ProfileConnectionFactory.create(settings.getProfile().getURI(), getReporter());
+        long start = System.nanoTime();
         this.partyId = settings.getID();
+        if (this.agentLog != null) {
+            this.agentLog.close();
+        }
+        Object logLevel = settings.getParameters().get(LOG_LEVEL);
+        this.agentLog = new AgentLog(getReporter(),
+                logLevel instanceof String ? Level.parse((String) logLevel) : DEFAULT_LOG_LEVEL);
+        if ("Learn".equals(settings.getProtocol().getURI().toString())) {
+            learn(settings.getParameters());
+            return;
+        }
+        this.profileInterface = ProfileConnectionFactory.create(settings.getProfile().getURI(), getReporter());
         this.progress = settings.getProgress();
         try {
             this.profile = this.profileInterface.getProfile();
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
-        this.domain = this.profile.getDomain();
-        this.allBidsList = new AllBidsList(domain);
-        for(Bid bid:this.allBidsList){
-            this.bidsUtilityMap.put(bid, ((UtilitySpace) this.profile).getUtility(bid));
+        if (!(this.profile instanceof LinearAdditive)) {
+            throw new IllegalStateException("MyAgent needs a LinearAdditive profile but got " + this.profile);
         }
-        this.bidsUtilityMap = sortBidsByUtility(this.bidsUtilityMap);
-
-        for (int i = 0; i < this.domain.getIssues().size(); i++) {
-            Value[] valueList = new Value[this.domain.getValues((String) this.domain.getIssues().toArray()[i]).size().intValue()];
-            for (int j = 0; j < this.domain.getValues((String) this.domain.getIssues().toArray()[i]).size().intValue(); j++) {
-                valueList[j] = this.domain.getValues((String) this.domain.getIssues().toArray()[i]).get(j);
+        this.domain = this.profile.getDomain();
+        closeTrace();
+        this.trace = openTrace(settings);
+        releaseShared();
+        Domain domain = this.domain;
+        this.schemaHandle = SCHEMAS.acquire(DomainSchema.getKey(domain), () -> new DomainSchema(domain));
+        this.schema = this.schemaHandle.get();
+        this.compiledProfile = new CompiledProfile(this.schema, (LinearAdditive) this.profile);
+        this.numberRefiner = new NumberRefiner(this.compiledProfile);
+        // Larger domains are not enumerated, bids are generated when they are needed
+        Parameters parameters = settings.getParameters();
+        boolean offHeap = isOffHeap(parameters);
+        if (offHeap || this.schema.size() <= MAX_TABLE_SIZE) {
+            this.tableHandle = TABLES.acquire(ContentHash.toHex(this.compiledProfile.getContentHash()),
+                    () -> loadBidTable(parameters, offHeap));
+            BidTable table = this.tableHandle.get();
+            if (!table.isComplete()) {
+                // only this session is short of time, the next one builds its own table
+                this.tableHandle.evict();
+                this.tableHandle = null;
             }
-            this.issueList.put(this.domain.getIssues().toArray()[i].toString(), valueList);
+            this.bidRanking = table.size() > 0 ? table : new LazyBidRanking(this.compiledProfile);
+        } else {
+            this.bidRanking = new LazyBidRanking(this.compiledProfile);
+        }
+        this.bidCache = new BidCache(this.schema, BID_CACHE_SIZE);
+        long bestCode = this.bidRanking.getCode(0);
+        this.bestBid = this.numberRefiner.refine(bestCode, this.bidCache.get(bestCode),
+                this.bidRanking.getUtility(0), null);
+        this.metrics = METRICS.openSession();
+        if (this.bidRanking instanceof BidTable) {
+            BidTable table = (BidTable) this.bidRanking;
+            this.metrics.setBidTable(table.size(), table.getHeapBytes());
         }
+        this.paretoFrontier = new ParetoFrontier(this.bidRanking);
+        this.nashTracker = new NashTracker(this.bidRanking, this.paretoFrontier);
+
+        this.opponentModel = new OpponentModel(this.schema, kValue);
+        if (Boolean.TRUE.equals(parameters.get(NEAREST_OFFERS))) {
+            this.valueIndex = new ValueIndex(this.schema, this.bidRanking,
+                    Math.min(this.bidRanking.size(), MAX_PARETO_CANDIDATES));
+            this.opponentWeights = new double[this.schema.getIssueCount()];
+        } else {
+            this.valueIndex = null;
+        }
+        this.offerHistory = new OfferHistory(
+                getParameter(parameters, HISTORY_CAPACITY, DEFAULT_HISTORY_CAPACITY).intValue(),
+                getParameter(parameters, HISTORY_DECAY, DEFAULT_HISTORY_DECAY).doubleValue());
+
+        stopWorker();
+        this.encounterLog.set(openSessionLog(parameters));
+        this.priorStore = openPriorStore(parameters);
+        this.worker = new Worker();
+        METRICS.record(AgentMetrics.Phase.INIT, System.nanoTime() - start);
+    }
 
-        double initialIssueWeight = (double) 1 / this.domain.getIssues().toArray().length;
-        for (int i = 0; i < this.domain.getIssues().toArray().length; i++) {
-            issueWeights.put(this.domain.getIssues().toArray()[i].toString(), initialIssueWeight);
+    // The log the encounter of this session is written to, null if there is none
+    private EncounterLog openSessionLog(Parameters parameters) {
+        List<File> files = getFiles(parameters, NEGOTIATION_DATA);
+        if (files.isEmpty()) {
+            return null;
+        }
+        try {
+            return EncounterLog.open(files.get(0));
+        } catch (IOException e) {
+            this.agentLog.log(Level.WARNING, "Encounter not logged: {}", e.getMessage());
+            return null;
         }
+    }
 
-        Object[] issueValue = new Object[3];
+    // The recorder of this session, null if it is not traced
+    private TraceRecorder openTrace(Settings settings) {
+        Object file = settings.getParameters().get(TRACE_FILE);
+        if (!(file instanceof String)) {
+            return null;
+        }
+        try {
+            TraceRecorder trace = new TraceRecorder(new File((String) file));
+            trace.settings(settings, (LinearAdditive) this.profile);
+            return trace;
+        } catch (IOException e) {
+            this.agentLog.log(Level.WARNING, "Session not traced: {}", e.getMessage());
+            return null;
+        }
+    }
 
-        for (int i = 0; i < this.domain.getIssues().size(); i++) {
-            for (int j = 0; j < this.domain.getValues((String) this.domain.getIssues().toArray()[i]).size().intValue(); j++) {
-                issueValue = new Object[]{this.domain.getIssues().toArray()[i].toString(),
-                        this.domain.getValues((String) this.domain.getIssues().toArray()[i]).get(j),
-                        (double) 1 / this.domain.getValues((String) this.domain.getIssues().toArray()[i]).size().intValue()};
-                this.issueValueList.add(issueValue);
+    private void closeTrace() {
+        if (this.trace == null) {
+            return;
+        }
+        try {
+            this.trace.close();
+            if (this.trace.getError() != null) {
+                this.agentLog.log(Level.WARNING, "Trace is incomplete: {}", this.trace.getError().getMessage());
             }
+        } catch (IOException e) {
+            this.agentLog.log(Level.WARNING, "Failed to close the trace: {}", e.getMessage());
         }
+        this.trace = null;
+    }
 
-        Random rand = new Random();
+    // The time in ms, recorded in the trace so that a replay sees the same time
+    private long now() {
+        long now = this.clock.getAsLong();
+        TraceRecorder trace = this.trace;
+        if (trace != null) {
+            trace.clock(now);
+        }
+        return now;
+    }
 
-        for (int i = 0; i < this.allBidsList.size().intValue() - 5; i++) {
-            int random = rand.nextInt(this.allBidsList.size().intValue() - 3);
-            this.receivedOffers.add(this.allBidsList.get(random));
+    // The priors learned in earlier Learn sessions, null if there are none
+    private PriorStore openPriorStore(Parameters parameters) {
+        List<File> persistent = getFiles(parameters, PERSISTENT_STATE);
+        if (persistent.isEmpty() || !getPriorsFile(persistent.get(0)).exists()) {
+            return null;
+        }
+        try {
+            return PriorStore.open(getPriorsFile(persistent.get(0)));
+        } catch (IOException e) {
+            this.agentLog.log(Level.WARNING, "Starting without priors: {}", e.getMessage());
+            return null;
         }
     }
 
-    // Sorting the bidsUtilityMap according to their utility value (ascending order)
-    private LinkedHashMap<Bid, BigDecimal> sortBidsByUtility(HashMap<Bid, BigDecimal> utilityMap)
-    {
-        List<Map.Entry<Bid, BigDecimal>> list = new LinkedList<>(utilityMap.entrySet());
-        Collections.sort(list, Collections.reverseOrder(Comparator.comparing(Map.Entry::getValue)));
-        LinkedHashMap<Bid, BigDecimal> sortedHashMap = new LinkedHashMap<>();
-        for (Map.Entry<Bid, BigDecimal> tuple : list) {
-            sortedHashMap.put(tuple.getKey(), tuple.getValue());
+    // Learn protocol: collect the encounters of the sessions in the persistent state and learn from them
+    private void learn(Parameters parameters) throws IOException {
+        List<File> persistent = getFiles(parameters, PERSISTENT_STATE);
+        if (!persistent.isEmpty()) {
+            try (EncounterLog log = EncounterLog.open(persistent.get(0))) {
+                Learner learner = new Learner(getReporter());
+                learner.appendEncounters(log, getFiles(parameters, NEGOTIATION_DATA),
+                        getSessionsFile(persistent.get(0)));
+                learner.processEncounter(log, getPriorsFile(persistent.get(0)));
+            }
         }
-        return sortedHashMap;
+        getConnection().send(new LearningDone(this.partyId));
     }
 
-    //This function is called when it's our turn so that we can take an action.
-    private void myTurn() throws IOException {
-        // Logging the process
-        getReporter().log(Level.INFO, "<MyAgent>: It's my turn!");
-        // Increasing the round count
-        this.time = progress.get(System.currentTimeMillis());
-        this.acceptableUtilityValue = 0.7 + (1 - this.time) * 0.3;
-        getReporter().log(Level.INFO, "Time:" + this.time);
-        getReporter().log(Level.INFO, "Acceptable Utility Value:" + this.acceptableUtilityValue);
+    // The priors learned from the encounter log are kept next to it
+    private static File getPriorsFile(File encounterLog) {
+        return new File(encounterLog.getPath() + ".priors");
+    }
 
-        // First round: lastReceivedBid == null
-        if(lastReceivedBid != null) {
-            this.receivedOffers.add(this.lastReceivedBid);
-            getReporter().log(Level.INFO, "Received Bid:" + lastReceivedBid.toString());
+    // The session logs already appended to the encounter log are kept next to it
+    private static File getSessionsFile(File encounterLog) {
+        return new File(encounterLog.getPath() + ".sessions");
+    }
+
+    // The files of a parameter holding one file UUID or a list of them
+    private static List<File> getFiles(Parameters parameters, String name) {
+        Object value = parameters.get(name);
+        List<File> files = new ArrayList<>();
+        if (value instanceof String) {
+            files.add(new FileLocation(UUID.fromString((String) value)).getFile());
+        } else if (value instanceof List) {
+            for (Object uuid : (List<?>) value) {
+                files.add(new FileLocation(UUID.fromString((String) uuid)).getFile());
+            }
         }
+        return files;
+    }
 
-        Bid nextBid = createBid();
-        updateAcceptable(nextBid);
+    // Ends the session: the encounter is logged after the last planned turn
+    private void finish(Bid agreement) {
+        if (this.worker == null || this.worker.isShutdown()) {
+            return;
+        }
+        this.worker.submit(() -> {
+            logOutcome(agreement);
+            return null;
+        });
+        this.worker.shutdown();
+        try {
+            // the session may end right after this, so give the log a chance to be written
+            this.worker.awaitTermination(TURN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the worker is kept, a next session or terminate stops it if it is still writing the log
+        this.plannedAction = null;
+        releaseShared();
+    }
 
-        Action action = null;
-        if (isAcceptable(lastReceivedBid)) {
-            // Action of acceptance
-            action = new Accept(partyId, lastReceivedBid);
-            getReporter().log(Level.INFO, "<MyAgent>: I accept the offer.");
+    /*
+     * Stops planning right away, the encounter of the session is not logged.
+     * The log is closed once the worker stopped, by the worker itself if it is
+     * still running a task that may write to it.
+     */
+    private void stopWorker() {
+        EncounterLog log;
+        if (this.worker != null) {
+            this.worker.shutdownNow();
+            try {
+                this.worker.awaitTermination(TURN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log = this.encounterLog.getAndSet(null);
+            if (log != null) {
+                this.worker.closeWhenStopped(log);
+            }
+            this.worker = null;
         } else {
-            action = makeAnOffer(nextBid);
+            log = this.encounterLog.getAndSet(null);
+            if (log != null) {
+                closeEncounterLog(log);
+            }
         }
-        getConnection().send(action);
+        this.plannedAction = null;
     }
 
-    private boolean isAcceptable(Bid bid) {
-        // First round: lastReceivedBid == null
-        if (bid == null)
-            return false;
-        // Returns true if utility value of the bid is greater than acceptable value
-        return ((UtilitySpace) this.profile).getUtility(bid).doubleValue() > this.acceptableUtilityValue;
+    private void closeEncounterLog(EncounterLog log) {
+        try {
+            log.close();
+        } catch (IOException e) {
+            this.agentLog.log(Level.WARNING, "Failed to close the encounter log: {}", e.getMessage());
+        }
     }
 
-    private Bid createBid() {
-        Bid offeredBid = (Bid) this.bidsUtilityMap.keySet().toArray()[0];
-        int totalRounds = 0;
-        int currentRound = 0;
-
-        if(progress instanceof ProgressRounds){
-            totalRounds = ((ProgressRounds) progress).getTotalRounds();
-            currentRound = ((ProgressRounds) progress).getCurrentRound();
+    /*
+     * The single thread that plans the turns of a session. A log handed to it
+     * is closed after its last task, when no task can write to it anymore.
+     */
+    private class Worker extends ThreadPoolExecutor {
+        private final AtomicReference<EncounterLog> closing = new AtomicReference<>();
+        private volatile boolean stopped = false;
+
+        Worker() {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "MyAgent-" + MyAgent.this.partyId);
+                thread.setDaemon(true);
+                return thread;
+            });
         }
 
-        if(currentRound == 1 && lastReceivedBid == null)
-            return offeredBid;
-
-        else if(currentRound <= 6)
-            offeredBid = (Bid) this.bidsUtilityMap.keySet().toArray()[currentRound];
+        // Closes the log when the worker stopped, right away if it did
+        void closeWhenStopped(EncounterLog log) {
+            this.closing.set(log);
+            // terminated() sets stopped before it takes the log, so one of the two closes it
+            if (this.stopped) {
+                closeHandedLog();
+            }
+        }
 
-        else {
-            List<Bid> paretos = getParetoPoints((List<Bid>)this.bidsUtilityMap.keySet());
-            Bid nashPoint = calculateNashPoint((List<Bid>)this.bidsUtilityMap.keySet(), paretos);
-            offeredBid = nashPoint;
+        @Override
+        protected void terminated() {
+            this.stopped = true;
+            closeHandedLog();
         }
-        /*else {
-            maxAcceptableValue = maxAcceptableValue - 0.02;
-            minAcceptableValue = 3 * maxAcceptableValue / 4;
-            getReporter().log(Level.INFO, "Min Accep: " + minAcceptableValue);
-            getReporter().log(Level.INFO, "Max Accep: " + maxAcceptableValue);
-            double averageAcceptatableValue = (maxAcceptableValue + minAcceptableValue) / 2;
-            for(int i=0; i<bidsUtilityMap.size(); i++){
-                BigDecimal bd = (BigDecimal)bidsUtilityMap.values().toArray()[i];
-                double a = bd.doubleValue();
-                if(a < averageAcceptatableValue && i != 0)
-                    offeredBid = (Bid) this.bidsUtilityMap.keySet().toArray()[i-1];
+
+        private void closeHandedLog() {
+            EncounterLog log = this.closing.getAndSet(null);
+            if (log != null) {
+                closeEncounterLog(log);
             }
-        }*/
-        return offeredBid;
+        }
     }
 
-    private Offer makeAnOffer(Bid offeredBid) {
-        getReporter().log(Level.INFO, "<MyAgent>: I am offering bid: " + offeredBid);
-        // Returns an offering action with the bid selected
-        return new Offer(partyId, offeredBid);
+    // Lets go of the shared schema and bid table, they stay shared while other agents hold them
+    private void releaseShared() {
+        if (this.metrics != null) {
+            this.metrics.close();
+            this.metrics = null;
+        }
+        if (this.tableHandle != null) {
+            this.tableHandle.close();
+            this.tableHandle = null;
+        }
+        if (this.schemaHandle != null) {
+            this.schemaHandle.close();
+            this.schemaHandle = null;
+        }
     }
 
-    private void updateAcceptable(Bid nextBid) {
-        double upper = 0.9, lower = 0.7;
-        double bidUtil = ((UtilitySpace) profile).getUtility(nextBid).doubleValue();
-        if (bidUtil >= upper) {
-            this.acceptableUtilityValue = upper;
-        } else if (bidUtil <= lower) {
-            this.acceptableUtilityValue = lower;
-        } else {
-            int total = 1, current = 0;
-            if (progress instanceof ProgressRounds) {
-                total = ((ProgressRounds) progress).getTotalRounds();
-                current = ((ProgressRounds) progress).getCurrentRound();
-            }
-            this.acceptableUtilityValue = bidUtil - (bidUtil - lower) * current / total;
+    // @return the numeric parameter, or the default if it is not set
+    private static Number getParameter(Parameters parameters, String name, Number defaultValue) {
+        Object value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
         }
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number but is " + value);
+        }
+        return (Number) value;
     }
 
-    private Bid calculateNashPoint(List<Bid> points, List<Bid> paretos){
-        Bid nashPoint = null;
-        double maximumUtility = 0.0;
-        // List<Bid> paretos = getParetoPoints(this.) ..
-
-        // placeholder before opponent modeling
-        List<Double> opponentUtilities = null;
-        for (Bid p : points)
-            opponentUtilities.add(0.5);
-
-        for (int i = 0; i < points.size(); ++i) {
-            if (!paretos.contains(points.get(i)))
-                continue; // not nash for sure
-            double prd = ((BigDecimal)bidsUtilityMap.values().toArray()[i]).doubleValue() * opponentUtilities.get(i);
-            if(prd > maximumUtility){
-                nashPoint = points.get(i);
-                maximumUtility = prd;
-            }
+    /*
+     * True if the bid table goes off heap: the "offHeapBids" parameter is set,
+     * the domain has at least that many bids and building the table fits in
+     * the direct memory.
+     */
+    private boolean isOffHeap(Parameters parameters) {
+        Number offHeapBids = getParameter(parameters, OFF_HEAP_BIDS, null);
+        long size = this.schema.size();
+        if (offHeapBids == null || size < offHeapBids.longValue()) {
+            return false;
+        }
+        long bytes = BidTableBuilder.getOffHeapBytes(size);
+        long available = Math.min(MAX_OFF_HEAP_BYTES, BidTableBuilder.getMaxDirectMemory());
+        if (bytes > available) {
+            this.agentLog.log(Level.WARNING, "A table of {} bids needs {} bytes off heap, {} are available", size,
+                    bytes, available);
+            return false;
         }
-        return nashPoint;
-    }
-
-    private List<Bid> getParetoPoints(List<Bid> points){
-        List<Bid> paretoPoints = null;
-        List<Bid> dominatedList = null;
-        paretoPoints.add(points.get(0));
-        boolean pareto = false;
-
-        // placeholder before opponent modeling
-        List<Double> opponentUtilities = null;
-        for (Bid p : points)
-            opponentUtilities.add(0.5);
-
-        for(int i=1; i<points.size(); i++){
-            double ourCurrentBidValue = ((BigDecimal)bidsUtilityMap.values().toArray()[i]).doubleValue();
-            double opponentCurrentBidValue = opponentUtilities.get(i);
-            for (int j = 0; j < i; ++j) {
-                if (!paretoPoints.contains(points.get(j)))
-                    continue;
-                double ourPreviousBidValue = ((BigDecimal)bidsUtilityMap.values().toArray()[j]).doubleValue();
-                double opponentPreviousBidValue = opponentUtilities.get(j);
-                if (ourCurrentBidValue <= ourPreviousBidValue && opponentCurrentBidValue <= opponentPreviousBidValue)
-                    break; // dominated
-                if (ourCurrentBidValue >= ourPreviousBidValue || opponentCurrentBidValue >= opponentPreviousBidValue){
-                    pareto = true;
-                    if (ourCurrentBidValue >= ourPreviousBidValue && opponentCurrentBidValue >= opponentPreviousBidValue) {
-                        dominatedList.add(points.get(j));
-                    }
+        return true;
+    }
+
+    // The bid table from the cache if this profile was played before, otherwise a new one
+    private BidTable loadBidTable(Parameters parameters, boolean offHeap) {
+        BidTableCache cache = getBidTableCache(parameters);
+        if (cache != null) {
+            try {
+                BidTable table = cache.load(this.compiledProfile);
+                if (table != null) {
+                    return table;
                 }
+            } catch (IOException e) {
+                this.agentLog.log(Level.WARNING, "Failed to load the cached bid table: {}", e.getMessage());
             }
-            if (pareto) {
-                paretoPoints.add(points.get(i));
-                for (Bid dominated : dominatedList)
-                    paretoPoints.remove(dominated); // remove previously added but dominated paretos
+        }
+        BidTable table = new BidTableBuilder(this.compiledProfile, ForkJoinPool.commonPool(), initDeadline(),
+                offHeap).build();
+        if (!table.isComplete()) {
+            this.agentLog.log(Level.WARNING, "Init deadline passed, using {} of {} bids", table.size(),
+                    this.schema.size());
+        } else if (cache != null) {
+            try {
+                cache.store(this.compiledProfile, table);
+            } catch (IOException e) {
+                this.agentLog.log(Level.WARNING, "Failed to cache the bid table: {}", e.getMessage());
             }
-            pareto = false;
-            dominatedList = null;
         }
-
-        return paretoPoints;
+        return table;
     }
 
-    private List<Bid> opponentPreferenceProfile(Bid offer) {
-
-        //valueEstimation();
+    /*
+     * The bid tables are cached in the directory of the "bidTableCache"
+     * parameter, or else next to the persistent state. @return null if there is
+     * no place for the cache.
+     */
+    private static BidTableCache getBidTableCache(Parameters parameters) {
+        Object directory = parameters.get(BID_TABLE_CACHE);
+        if (directory instanceof String) {
+            return new BidTableCache(new File((String) directory));
+        }
+        List<File> persistent = getFiles(parameters, PERSISTENT_STATE);
+        if (persistent.isEmpty()) {
+            return null;
+        }
+        return new BidTableCache(new File(persistent.get(0).getParentFile(), "MyAgent-bidtables"));
+    }
 
-        Bid[] previousWindow = new Bid[kValue];
-        Bid[] currentWindow = new Bid[kValue];
+    // System time in ms by which the bid table should be ready
+    private long initDeadline() {
+        Date end = this.progress.getTerminationTime();
+        if (end == null) {
+            return Long.MAX_VALUE;
+        }
+        // the deadline is on the system clock, also when the clock is replayed
+        return System.currentTimeMillis() + (long) ((end.getTime() - now()) * INIT_TIME_FRACTION);
+    }
 
-        if (this.receivedOffers.size() / kValue > 1 && this.receivedOffers.size() % kValue == 0) {
-            for (int i = 0; i < 3; i++) {
-                previousWindow[i] = this.receivedOffers.get(((this.receivedOffers.size() / 3) - 2) * 3 + i);
-                currentWindow[i] = this.receivedOffers.get(((this.receivedOffers.size() / 3) - 1) * 3 + i);
+    /*
+     * Starts working on our next turn as soon as the opponent made its offer,
+     * so that most of the work is done before YourTurn comes in.
+     * <p>
+     * The plan reads the time when it runs, just after the offer, not when our
+     * turn starts. We accept that: with rounds the plan already has the round
+     * of our turn. With time the time only sets how many bids are candidates,
+     * the acceptance threshold follows from the bid we plan. And in SAOP our
+     * turn comes right after the opponent's offer. Reading the time again in
+     * myTurn would mean planning again.
+     */
+    private void planTurn(Offer offer) {
+        // the round of our turn, progress is only advanced when it starts
+        Progress turnProgress = this.progress;
+        if (turnProgress instanceof ProgressRounds) {
+            ProgressRounds rounds = (ProgressRounds) turnProgress;
+            if (rounds.getCurrentRound() < rounds.getTotalRounds()) {
+                turnProgress = rounds.advance();
             }
         }
+        Progress planProgress = turnProgress;
+        this.plannedAction = this.worker.submit(() -> {
+            receiveOffer(offer.getActor(), offer.getBid());
+            return decide(planProgress);
+        });
+    }
 
-        Set<String> e = new HashSet<>();
-        boolean concession = false;
-
-        Double[] previousWeigths = new Double[this.issueWeights.size()];
-        for (int i = 0; i < this.issueWeights.size(); i++) {
-            previousWeigths[i] = this.issueWeights.get(this.domain.getIssues().toArray()[i].toString());
+    //This function is called when it's our turn so that we can take an action.
+    private void myTurn() throws IOException {
+        // Logging the process
+        this.agentLog.log(Level.INFO, "<MyAgent>: It's my turn!");
+        long start = System.nanoTime();
+        boolean fallback = false;
+        Future<Action> planned = this.plannedAction;
+        this.plannedAction = null;
+        if (planned == null) {
+            // no offer came in since our last turn, plan now
+            Progress turnProgress = this.progress;
+            planned = this.worker.submit(() -> decide(turnProgress));
         }
-        List<Bid> preferenceProfile = new ArrayList<>();
-        //System.out.println(this.receivedOffers.get(0).getIssueValues().toString());
-
-        //System.out.println(Arrays.toString(previousWindow[0].getIssues().toArray()));
+        Action action;
+        try {
+            action = planned.get(TURN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // the worker finishes the plan anyway, so its state stays consistent. Its action is never sent.
+            planned.cancel(false);
+            fallback = true;
+            action = new Offer(this.partyId, this.lastOfferedBid != null ? this.lastOfferedBid : this.bestBid);
+            this.agentLog.log(Level.WARNING, "Turn not planned in time, offering {}", action);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to plan the turn", e.getCause());
+        }
+        if (this.trace != null) {
+            this.trace.decision(action, System.nanoTime() - start, fallback);
+        }
+        if (fallback) {
+            METRICS.fallback();
+        }
+        if (action instanceof Accept) {
+            METRICS.accept();
+        } else if (action instanceof Offer) {
+            METRICS.offer();
+            this.lastOfferedBid = ((Offer) action).getBid();
+        }
+        getConnection().send(action);
+    }
 
-        /*for(int i = 0; i < previousWindow.length; i++){
-            for (int j = 0; j < 2; j++){
-                System.out.println(previousWindow[i].getValue(previousWindow[i].getIssues().toArray()[j].toString()));
+    // Encodes the offer once, everything after this works on its code
+    private void receiveOffer(PartyId opponent, Bid bid) throws IOException {
+        if (this.opponent == null) {
+            warmStart(opponent);
+        }
+        this.opponent = opponent;
+        this.lastReceivedBid = bid;
+        // numbers between the grid values count as the nearest grid value, except for our utility
+        this.lastReceivedCode = this.schema.encodeNearest(bid);
+        this.lastReceivedUtility = this.compiledProfile.getUtility(bid);
+        this.lastReceivedNew = true;
+        EncounterLog log = this.encounterLog.get();
+        if (log != null && this.lastReceivedCode >= 0) {
+            try {
+                if (!log.isWriting()) {
+                    log.begin(opponent.getName(), this.schema);
+                }
+                log.addOffer(this.lastReceivedCode);
+            } catch (IOException e) {
+                dropEncounterLog(log, e);
             }
-        }*/
+        }
+    }
 
-        return preferenceProfile;
+    // The encounter log is best effort, when it fails the session goes on without it. Runs on the worker.
+    private void dropEncounterLog(EncounterLog log, IOException cause) {
+        log.abort();
+        this.agentLog.log(Level.WARNING, "Encounter not logged: {}", cause.getMessage());
+        // if stopWorker took it already, the worker closes it after this task
+        if (this.encounterLog.compareAndSet(log, null)) {
+            closeEncounterLog(log);
+        }
     }
 
-    private double Fr(Value value, Bid[] window) {
-        int valueCount = 0;
-        int deltaValue = 0;
-        for (int i = 0; i < kValue; i++) {
-            if (window[i].getIssueValues().containsValue(value)) {
-                valueCount++;
-            }
+    // Starts the opponent model from the prior of the opponent, if there is one
+    private void warmStart(PartyId opponent) throws IOException {
+        if (this.priorStore == null) {
+            return;
+        }
+        OpponentPrior prior = this.priorStore.get(opponent.getName(), this.schema.getDomain().getName());
+        if (prior != null && prior.matches(this.schema)) {
+            this.opponentModel.warmStart(prior);
+            this.agentLog.log(Level.INFO, "Opponent model starts from {} encounters with {}", prior.getEncounters(),
+                    prior.getOpponent());
         }
-        //System.out.println(lastReceivedBid.getValue("issue"));
-        return 1;
     }
 
-    private void valueEstimation(Bid lastReceivedBid) {
+    // Writes the encounter to the session log and closes it. Runs on the worker.
+    private void logOutcome(Bid agreement) {
+        EncounterLog log = this.encounterLog.getAndSet(null);
+        if (log == null) {
+            return;
+        }
+        try (EncounterLog closing = log) {
+            if (this.opponent == null) {
+                return; // the opponent never made an offer
+            }
+            if (!log.isWriting()) {
+                log.begin(this.opponent.getName(), this.schema);
+            }
+            long code = agreement == null ? -1 : this.schema.encode(agreement);
+            double utility = agreement == null ? 0 : this.compiledProfile.getUtility(agreement);
+            log.commit(this.turns, code, utility);
+        } catch (IOException e) {
+            log.abort();
+            this.agentLog.log(Level.WARNING, "Encounter not logged: {}", e.getMessage());
+        }
+    }
 
-       /*Object [] issueValueList = new Object[3];
-        for(int i = 0; i < this.domain.getIssues().size(); i++){
-            for(int j = 0; j <this.domain.getValues((String)this.domain.getIssues().toArray()[i]).size().intValue(); j++)
-            issueValueList = new Object[]{this.domain.getIssues().toArray()[i].toString(), this.domain.getValues((String) this.domain.getIssues().toArray()[i]).get(j), 0.2};
-        }*/
+    // Decides on the action for the turn with the given progress. Runs on the worker.
+    private Action decide(Progress turnProgress) {
+        this.turnProgress = turnProgress;
+        this.turns++;
+        this.time = turnProgress.get(now());
+        this.acceptableUtilityValue = 0.7 + (1 - this.time) * 0.3;
+        if (this.agentLog.isLoggable(Level.INFO)) {
+            this.agentLog.log(Level.INFO, "Time:{}", this.time);
+            this.agentLog.log(Level.INFO, "Acceptable Utility Value:{}", this.acceptableUtilityValue);
+        }
 
-        //ArrayList<Object[]> maxValues = new ArrayList<>();
+        // First round: lastReceivedBid == null
+        if (this.lastReceivedNew) {
+            if (this.lastReceivedCode >= 0) {
+                long start = System.nanoTime();
+                this.offerHistory.add(this.lastReceivedCode, this.lastReceivedUtility);
+                this.opponentModel.update(this.lastReceivedCode, this.time);
+                METRICS.record(AgentMetrics.Phase.OPPONENT_MODEL, System.nanoTime() - start);
+                AgentMetrics.Session metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.setHistoryLength(this.offerHistory.size());
+                }
+            }
+            this.lastReceivedNew = false;
+            this.agentLog.log(Level.INFO, "Received Bid:{}", lastReceivedBid);
+        }
 
-        for(int i = 0; i < this.receivedOffers.size(); i++){
-            System.out.println(i);
-            System.out.println(this.receivedOffers.get(i));
+        long start = System.nanoTime();
+        int nextRank = createBid();
+        long nextCode = this.bidRanking.getCode(nextRank);
+        Bid nextBid = this.bidCache.get(nextCode);
+        long created = System.nanoTime();
+        METRICS.record(AgentMetrics.Phase.CREATE_BID, created - start);
+        double nextUtility = this.bidRanking.getUtility(nextRank);
+        updateAcceptable(nextUtility);
+        boolean acceptable = isAcceptable();
+        METRICS.record(AgentMetrics.Phase.ACCEPTANCE, System.nanoTime() - created);
+        if (!acceptable && this.numberRefiner.isRefining()) {
+            // concede on the numbers towards the opponent, down to what we would accept
+            nextBid = this.numberRefiner.refine(nextCode, nextBid,
+                    Math.min(nextUtility, this.acceptableUtilityValue), this.lastReceivedBid);
         }
 
-        for (int i = 0; i < this.issueValueList.size(); i++) {
-            System.out.println("Value " + this.issueValueList.get(i)[1] + " appears " +
-                    numeratorCalc((String) this.issueValueList.get(i)[0], (Value) this.issueValueList.get(i)[1]) + " times");
-            /*if(numeratorCalc((String) this.issueValueList.get(i)[0], (Value) this.issueValueList.get(i)[1]) >
-                    maxValue)
-                maxValues.add(new Object[]{this.issueValueList.get(i)[0] ,
-                        numeratorCalc((String) this.issueValueList.get(i)[0],
-                                (Value) this.issueValueList.get(i)[1])});*/
-                /*if(ifValueAppears((String)this.issueValueList.get(i)[0],
-                        (Value) this.issueValueList.get(i)[1],
-                        this.receivedOffers.get(j)) == 1) {
-                    System.out.println(this.receivedOffers.get(j));
-                    System.out.println("YES. Value " + this.issueValueList.get(i)[1] + " exist in bid " + j);
-                }*/
+        if (acceptable) {
+            // Action of acceptance
+            this.agentLog.log(Level.INFO, "<MyAgent>: I accept the offer.");
+            return new Accept(partyId, lastReceivedBid);
         }
+        return makeAnOffer(nextBid);
+    }
 
+    private boolean isAcceptable() {
+        // First round: lastReceivedBid == null
+        if (this.lastReceivedBid == null)
+            return false;
+        // Returns true if utility value of the bid is greater than acceptable value
+        return this.lastReceivedUtility > this.acceptableUtilityValue;
+    }
 
-        /*for(int i = 0; i < this.issueValueList.size(); i++){
-            if(ifValueAppears((String)this.issueValueList.get(i)[0],
-                    (Value) this.issueValueList.get(i)[1],
-                    lastReceivedBid) == 1) {
-                System.out.println("YES. Value " + this.issueValueList.get(i)[1] + " exist in bid");
-            }
-            System.out.println(ifValueAppears((String)listIterator.next()[0],
-                    this.domain.getValues((String)listIterator.next()[0]).get(0)
-                    (Value) listIterator.next()[1],
-                    this.receivedOffers.get(offerCount)));
-        }*/
+    // @return the rank of the bid to offer in the bid ranking
+    private int createBid() {
+        int offeredRank = 0;
+        int totalRounds = 0;
+        int currentRound = 0;
 
+        if(this.turnProgress instanceof ProgressRounds){
+            totalRounds = ((ProgressRounds) this.turnProgress).getTotalRounds();
+            currentRound = ((ProgressRounds) this.turnProgress).getCurrentRound();
+        }
 
-       /* int[] arr= new int[]{1,2,3,4,5};
-        System.out.println(Arrays.toString(arr));*/
+        if(currentRound == 1 && lastReceivedBid == null)
+            return offeredRank;
 
+        else if(currentRound <= 6)
+            offeredRank = Math.min(currentRound, this.bidRanking.size() - 1);
 
-        /*for(int i = 0; i < this.receivedOffers.size(); i++){
-            System.out.println(this.receivedOffers.get(0));
+        else {
+            updateParetoFrontier();
+            offeredRank = calculateNashPoint();
+            if (this.valueIndex != null && this.lastReceivedCode >= 0) {
+                offeredRank = nearestToOffer(offeredRank);
+            }
+        }
+        /*else {
+            maxAcceptableValue = maxAcceptableValue - 0.02;
+            minAcceptableValue = 3 * maxAcceptableValue / 4;
+            getReporter().log(Level.INFO, "Min Accep: " + minAcceptableValue);
+            getReporter().log(Level.INFO, "Max Accep: " + maxAcceptableValue);
+            double averageAcceptatableValue = (maxAcceptableValue + minAcceptableValue) / 2;
+            int count = this.bidRanking.countAtLeast(averageAcceptatableValue);
+            if(count > 0)
+                offeredRank = count - 1;
         }*/
+        return offeredRank;
     }
 
+    private Offer makeAnOffer(Bid offeredBid) {
+        this.agentLog.log(Level.INFO, "<MyAgent>: I am offering bid: {}", offeredBid);
+        // Returns an offering action with the bid selected
+        return new Offer(partyId, offeredBid);
+    }
 
-    private int ifValueAppears(String issue, Value value, Bid bid) {
-        return bid.getValue(issue).equals(value) ? 1 : 0;
+    private void updateAcceptable(double bidUtil) {
+        double upper = 0.9, lower = 0.7;
+        if (bidUtil >= upper) {
+            this.acceptableUtilityValue = upper;
+        } else if (bidUtil <= lower) {
+            this.acceptableUtilityValue = lower;
+        } else {
+            int total = 1, current = 0;
+            if (this.turnProgress instanceof ProgressRounds) {
+                total = ((ProgressRounds) this.turnProgress).getTotalRounds();
+                current = ((ProgressRounds) this.turnProgress).getCurrentRound();
+            }
+            this.acceptableUtilityValue = bidUtil - (bidUtil - lower) * current / total;
+        }
     }
 
-    private double numeratorCalc(String issue, Value value){
-        int count = 0;
-        double exp = 0.4;
+    // Brings the Pareto frontier up to date. Only the bids we could still offer are candidates.
+    private void updateParetoFrontier() {
+        // with a lazy ranking counting costs as much as the bids counted, so stop at the cap
+        int candidates = Math.max(1, this.bidRanking.countAtLeast(this.acceptableUtilityValue, MAX_PARETO_CANDIDATES));
+        // After a model change all estimates are refreshed; the frontier sweeps from the first that moved
+        int from = this.opponentModel.getVersion() == this.frontierModelVersion ? this.paretoFrontier.getCandidates() : 0;
+        this.paretoFrontier.setCandidates(candidates);
+        for (int rank = Math.min(from, candidates); rank < candidates; rank++) {
+            this.paretoFrontier.setOpponentUtility(rank, this.opponentModel.getUtility(this.bidRanking.getCode(rank)));
+        }
+        this.frontierModelVersion = this.opponentModel.getVersion();
+        this.paretoFrontier.update();
+    }
 
-        for(int i = 0; i < this.receivedOffers.size(); i++){
-            if(ifValueAppears(issue, value, this.receivedOffers.get(i)) == 1)
-                count++;
+    /*
+     * The rank of the bid, at least as good for us as the bid of the given
+     * rank, that is nearest to the opponent's last offer. Issues are weighed
+     * as the opponent model estimates the opponent weighs them.
+     */
+    private int nearestToOffer(int rank) {
+        for (int i = 0; i < this.opponentWeights.length; i++) {
+            this.opponentWeights[i] = this.opponentModel.getWeight(i);
         }
+        int candidates = Math.min(rank + 1, this.valueIndex.size());
+        // bids with the same utility as the bid of the rank are candidates too
+        while (candidates < this.valueIndex.size()
+                && this.bidRanking.getUtility(candidates) >= this.bidRanking.getUtility(rank)) {
+            candidates++;
+        }
+        int nearest = this.valueIndex.nearest(this.lastReceivedCode, this.opponentWeights, candidates);
+        return nearest < 0 ? rank : nearest;
+    }
 
-        return Math.pow((count + 1), exp);
+    // The rank of the frontier bid with the highest product of our and the opponent's utility
+    private int calculateNashPoint(){
+        this.nashTracker.update();
+        return this.nashTracker.getNashRank();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package geniusweb.sampleagent;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the Nash point, the bid with the highest product of our utility and
+ * the estimated opponent utility, on a {@link ParetoFrontier}. The product of
+ * every frontier bid is cached with a running argmax per frontier position.
+ * Frontier changes always start at some position and run to its end, so an
+ * update only recomputes the entries from there and the Nash point is read in
+ * O(1).
+ */
+public class NashTracker {
+
+    private final BidRanking ranking;
+    private final ParetoFrontier frontier;
+    // products[i]: our utility times the opponent utility of frontier position i
+    private double[] products = new double[16];
+    // bestUpTo[i]: position with the highest product among the positions 0 .. i
+    private int[] bestUpTo = new int[16];
+    private int size = 0;
+
+    public NashTracker(BidRanking ranking, ParetoFrontier frontier) {
+        this.ranking = ranking;
+        this.frontier = frontier;
+    }
+
+    // Catches up with the changes of the frontier since the last update
+    public void update() {
+        int newSize = this.frontier.size();
+        if (newSize > this.products.length) {
+            int capacity = Math.max(newSize, this.products.length * 2);
+            this.products = Arrays.copyOf(this.products, capacity);
+            this.bestUpTo = Arrays.copyOf(this.bestUpTo, capacity);
+        }
+        int from = Math.min(this.frontier.getChangedFrom(), this.size);
+        for (int i = from; i < newSize; i++) {
+            int rank = this.frontier.getRank(i);
+            this.products[i] = this.ranking.getUtility(rank) * this.frontier.getOpponentUtility(rank);
+            if (i == 0 || this.products[i] > this.products[this.bestUpTo[i - 1]]) {
+                this.bestUpTo[i] = i;
+            } else {
+                this.bestUpTo[i] = this.bestUpTo[i - 1];
+            }
+        }
+        this.size = newSize;
+        this.frontier.clearChanged();
+    }
+
+    // @return the rank of the Nash point, or -1 if the frontier is empty
+    public int getNashRank() {
+        return this.size == 0 ? -1 : this.frontier.getRank(this.bestUpTo[this.size - 1]);
+    }
+}
@@ -0,0 +1,192 @@
+package geniusweb.sampleagent;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.Range;
+import geniusweb.issuevalue.Value;
+import geniusweb.profile.utilityspace.NumberValueSetUtilities;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sets the numeric issues that have a grid in the {@link DomainSchema} to any
+ * step of their range, not only the grid values. The utility of a number is
+ * linear between the low and high value of the profile and 0 outside, so the
+ * best step can be computed directly and, going away from it, the utility only
+ * goes down. A bid from the grid is refined around a utility threshold: each
+ * such issue goes to the step nearest to the opponent's value that keeps the
+ * bid above the threshold, or to the best step if the opponent did not offer
+ * one. Immutable.
+ */
+public class NumberRefiner {
+
+    private final DomainSchema schema;
+    private final CompiledProfile profile;
+    // Schema indices of the issues with a grid that our profile values by number
+    private final int[] issues;
+    private final Range[] ranges;
+    // Step of each grid value in the range
+    private final long[][] gridSteps;
+    // Steps from lowStep to highStep are between the low and high value of the profile
+    private final long[] lowSteps;
+    private final long[] highSteps;
+    private final long[] bestSteps;
+    private final double[] low;
+    private final double[] step;
+    private final double[] weights;
+    private final double[] lowValues;
+    private final double[] lowUtilities;
+    private final double[] highValues;
+    private final double[] highUtilities;
+
+    public NumberRefiner(CompiledProfile profile) {
+        this.schema = profile.getSchema();
+        this.profile = profile;
+        int[] found = new int[this.schema.getIssueCount()];
+        int count = 0;
+        for (int i = 0; i < found.length; i++) {
+            String issue = this.schema.getIssue(i);
+            ValueSetUtilities utilities = profile.getProfile().getUtilities().get(issue);
+            if (this.schema.getGridRange(i) != null && utilities instanceof NumberValueSetUtilities
+                    && profile.getProfile().getWeight(issue) != null) {
+                found[count++] = i;
+            }
+        }
+        this.issues = new int[count];
+        System.arraycopy(found, 0, this.issues, 0, count);
+        this.ranges = new Range[count];
+        this.gridSteps = new long[count][];
+        this.lowSteps = new long[count];
+        this.highSteps = new long[count];
+        this.bestSteps = new long[count];
+        this.low = new double[count];
+        this.step = new double[count];
+        this.weights = new double[count];
+        this.lowValues = new double[count];
+        this.lowUtilities = new double[count];
+        this.highValues = new double[count];
+        this.highUtilities = new double[count];
+        for (int e = 0; e < count; e++) {
+            int issue = this.issues[e];
+            Range range = this.schema.getGridRange(issue);
+            NumberValueSetUtilities utilities = (NumberValueSetUtilities) profile.getProfile().getUtilities()
+                    .get(this.schema.getIssue(issue));
+            long lastStep = range.size().longValueExact() - 1;
+            this.ranges[e] = range;
+            this.gridSteps[e] = new long[this.schema.getValueCount(issue)];
+            for (int v = 0; v < this.gridSteps[e].length; v++) {
+                this.gridSteps[e][v] = getStep(range, ((NumberValue) this.schema.getValue(issue, v)).getValue());
+            }
+            this.lowSteps[e] = Math.max(0, toStep(range, utilities.getLowValue(), RoundingMode.CEILING));
+            this.highSteps[e] = Math.min(lastStep, toStep(range, utilities.getHighValue(), RoundingMode.FLOOR));
+            this.low[e] = range.getLow().doubleValue();
+            this.step[e] = range.getStep().doubleValue();
+            this.weights[e] = profile.getProfile().getWeight(this.schema.getIssue(issue)).doubleValue();
+            this.lowValues[e] = utilities.getLowValue().doubleValue();
+            this.lowUtilities[e] = utilities.getLowUtility().doubleValue();
+            this.highValues[e] = utilities.getHighValue().doubleValue();
+            this.highUtilities[e] = utilities.getHighUtility().doubleValue();
+            // linear in between, so the best step is at one of the ends
+            this.bestSteps[e] = getUtility(e, this.lowSteps[e]) >= getUtility(e, this.highSteps[e]) ? this.lowSteps[e]
+                    : this.highSteps[e];
+        }
+    }
+
+    // @return true if there are issues to refine, if not the bids stay as they are
+    public boolean isRefining() {
+        return this.issues.length > 0;
+    }
+
+    /**
+     * @param code      code of the bid from the grid
+     * @param bid       the decoded bid of the code, returned if no issue
+     *                  changes
+     * @param threshold our utility the refined bid should keep, at most the
+     *                  utility of the bid itself
+     * @param opponent  the opponent's last offer, or null if there is none
+     * @return the bid with its numeric issues refined
+     */
+    public Bid refine(long code, Bid bid, double threshold, Bid opponent) {
+        if (this.issues.length == 0) {
+            return bid;
+        }
+        double utility = this.profile.getUtility(code);
+        Map<String, Value> refined = null;
+        for (int e = 0; e < this.issues.length; e++) {
+            int issue = this.issues[e];
+            int ordinal = this.schema.decodeOrdinal(code, issue);
+            if (this.lowSteps[e] > this.highSteps[e]) {
+                continue; // no step is worth anything to us
+            }
+            double rest = utility - this.profile.getWeightedUtility(issue, ordinal);
+            long target = opponent == null ? -1 : getOpponentStep(e, opponent.getValue(this.schema.getIssue(issue)));
+            long chosen = target < 0 ? this.bestSteps[e] : nearestAbove(e, target, threshold - rest);
+            utility = rest + getUtility(e, chosen);
+            if (chosen != this.gridSteps[e][ordinal]) {
+                if (refined == null) {
+                    refined = new HashMap<>(bid.getIssueValues());
+                }
+                refined.put(this.schema.getIssue(issue),
+                        new NumberValue(this.ranges[e].get(BigInteger.valueOf(chosen))));
+            }
+        }
+        return refined == null ? bid : new Bid(refined);
+    }
+
+    // The step nearest to the target that is worth at least the given utility, the best step if none is
+    private long nearestAbove(int e, long target, double utility) {
+        // a little slack, the grid utilities are summed in another order
+        double needed = utility - 1e-12;
+        long best = this.bestSteps[e];
+        if (getUtility(e, target) >= needed || getUtility(e, best) < needed) {
+            return getUtility(e, target) >= needed ? target : best;
+        }
+        // from the best step towards the target the utility only goes down
+        long direction = target > best ? 1 : -1;
+        long good = 0;
+        long bad = Math.abs(target - best);
+        while (bad - good > 1) {
+            long middle = (good + bad) >>> 1;
+            if (getUtility(e, best + direction * middle) >= needed) {
+                good = middle;
+            } else {
+                bad = middle;
+            }
+        }
+        return best + direction * good;
+    }
+
+    // Our weighted utility of the step of the issue
+    private double getUtility(int e, long step) {
+        if (step < this.lowSteps[e] || step > this.highSteps[e]) {
+            return 0;
+        }
+        if (this.highValues[e] == this.lowValues[e]) {
+            return this.weights[e] * this.lowUtilities[e];
+        }
+        double number = this.low[e] + step * this.step[e];
+        return this.weights[e] * (this.lowUtilities[e] + (this.highUtilities[e] - this.lowUtilities[e])
+                * (number - this.lowValues[e]) / (this.highValues[e] - this.lowValues[e]));
+    }
+
+    // @return the step of the value in the range of the issue, or -1 if it is not a number in the range
+    private long getOpponentStep(int e, Value value) {
+        if (!(value instanceof NumberValue) || !this.ranges[e].contains(((NumberValue) value).getValue())) {
+            return -1;
+        }
+        return getStep(this.ranges[e], ((NumberValue) value).getValue());
+    }
+
+    private static long getStep(Range range, BigDecimal number) {
+        return toStep(range, number, RoundingMode.UNNECESSARY);
+    }
+
+    private static long toStep(Range range, BigDecimal number, RoundingMode rounding) {
+        return number.subtract(range.getLow()).divide(range.getStep(), 0, rounding).longValueExact();
+    }
+}
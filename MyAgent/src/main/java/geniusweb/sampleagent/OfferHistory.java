@@ -0,0 +1,108 @@
+package geniusweb.sampleagent;
+
+/**
+ * The offers received from the opponent, as {@link DomainSchema} codes. Only
+ * the last capacity offers are kept, in a ring. Next to that the history keeps
+ * the average of our utility over all offers in which an offer counts
+ * decay^age, where age is the number of offers received after it. The memory
+ * use only depends on the capacity, never on the length of the session.
+ */
+public class OfferHistory {
+
+    // Weights are rescaled when they grow beyond this
+    private static final double RESCALE_LIMIT = 1e100;
+
+    private final double decay;
+    private final long[] codes;
+    private final double[] utilities;
+    // number of offers received in total
+    private long total = 0;
+
+    /*
+     * Instead of multiplying all statistics by decay for every offer, the new
+     * offer gets weight 1/decay times the weight of the offer before it. The
+     * ratios between the statistics stay the same.
+     */
+    private double weight = 1;
+    private double totalWeight = 0;
+    // summed weight times our utility of the offer
+    private double utilityWeight = 0;
+
+    /**
+     * @param capacity the number of offers that are kept
+     * @param decay    factor in (0,1] for the weight of an offer in the
+     *                 statistics each time a newer offer comes in. 1 weighs all
+     *                 offers the same.
+     */
+    public OfferHistory(int capacity, double decay) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive but is " + capacity);
+        }
+        if (!(decay > 0 && decay <= 1)) {
+            throw new IllegalArgumentException("decay must be in (0,1] but is " + decay);
+        }
+        this.decay = decay;
+        this.codes = new long[capacity];
+        this.utilities = new double[capacity];
+    }
+
+    /**
+     * Adds an offer of the opponent.
+     *
+     * @param code    the DomainSchema code of the offered bid
+     * @param utility our utility of the bid
+     */
+    public void add(long code, double utility) {
+        int slot = (int) (this.total % this.codes.length);
+        this.codes[slot] = code;
+        this.utilities[slot] = utility;
+        this.total++;
+
+        if (this.total > 1) {
+            this.weight /= this.decay;
+        }
+        if (this.weight > RESCALE_LIMIT) {
+            rescale(1 / this.weight);
+        }
+        this.totalWeight += this.weight;
+        this.utilityWeight += this.weight * utility;
+    }
+
+    // Number of offers that are kept
+    public int size() {
+        return (int) Math.min(this.total, this.codes.length);
+    }
+
+    // Number of offers received in total, also the ones no longer kept
+    public long getTotal() {
+        return this.total;
+    }
+
+    // @return the code of the offer received age offers before the last one
+    public long getCode(int age) {
+        return this.codes[slot(age)];
+    }
+
+    // @return our utility of the offer received age offers before the last one
+    public double getUtility(int age) {
+        return this.utilities[slot(age)];
+    }
+
+    // Decayed average of our utility of the offers, 0 if there were none
+    public double getAverageUtility() {
+        return this.totalWeight == 0 ? 0 : this.utilityWeight / this.totalWeight;
+    }
+
+    private int slot(int age) {
+        if (age < 0 || age >= size()) {
+            throw new IndexOutOfBoundsException("age " + age + " of " + size() + " offers");
+        }
+        return (int) ((this.total - 1 - age) % this.codes.length);
+    }
+
+    private void rescale(double factor) {
+        this.totalWeight *= factor;
+        this.utilityWeight *= factor;
+        this.weight *= factor;
+    }
+}
@@ -0,0 +1,262 @@
+package geniusweb.sampleagent;
+
+import java.util.Arrays;
+
+/**
+ * Frequency based model of the opponent's linear additive profile, updated
+ * online with every offer the opponent makes.
+ * <p>
+ * The value estimate of a value is (count+1)^0.4, normalized by the highest
+ * estimate of its issue. Issue weights start flat. Every windowSize offers the
+ * value frequencies of the last window are compared with the window before. If
+ * the opponent did not concede, the issues whose frequencies did not change
+ * get more weight. The model can start from a prior learned in earlier
+ * encounters with the opponent. Each offer costs O(#issues), and a window comparison
+ * O(windowSize^2 * #issues) once per window.
+ * <p>
+ * The estimates that {@link #getUtility(long)} and
+ * {@link #getValueEstimate(int, int)} give are published once per window, not
+ * with every offer, so users that re-estimate many bids after a change, like
+ * the Pareto frontier, only do so once per window.
+ */
+public class OpponentModel {
+
+    private static final double VALUE_EXPONENT = 0.4;
+    // delta(t) = ALPHA * (1 - t^BETA) is added to the weight of unchanged issues
+    private static final double ALPHA = 0.1;
+    private static final double BETA = 5;
+    // Frequency distributions closer than this (total variation) count as unchanged
+    private static final double UNCHANGED_DISTANCE = 0.2;
+    // A prior counts as this many offers
+    private static final double PRIOR_OFFERS = 10;
+
+    private final DomainSchema schema;
+    private final int issueCount;
+    private final int windowSize;
+    // counts[i][v]: number of offers with value v for issue i
+    private final int[][] counts;
+    // priorCounts[i][v]: offers with value v for issue i according to the prior
+    private final double[][] priorCounts;
+    // scores[i][v]: (counts[i][v] + priorCounts[i][v] + 1)^0.4
+    private final double[][] scores;
+    // highest score per issue
+    private final double[] maxScores;
+    // estimates[i][v]: scores[i][v] / maxScores[i] when the estimates were last published
+    private final double[][] estimates;
+    private final double[] weights;
+    // The value ordinals of the last 2 * windowSize offers, as a ring
+    private final int[][] window;
+    // value counts of the previous and the current window, only filled while comparing
+    private final int[][] previousCounts;
+    private final int[][] currentCounts;
+    // issues whose frequencies did not change between the windows
+    private final boolean[] unchanged;
+    private int offers = 0;
+    // Changes whenever the estimates are published
+    private long version = 0;
+
+    public OpponentModel(DomainSchema schema, int windowSize) {
+        this.schema = schema;
+        this.issueCount = schema.getIssueCount();
+        this.windowSize = windowSize;
+        this.counts = new int[this.issueCount][];
+        this.scores = new double[this.issueCount][];
+        this.estimates = new double[this.issueCount][];
+        this.priorCounts = new double[this.issueCount][];
+        this.previousCounts = new int[this.issueCount][];
+        this.currentCounts = new int[this.issueCount][];
+        this.maxScores = new double[this.issueCount];
+        this.weights = new double[this.issueCount];
+        for (int i = 0; i < this.issueCount; i++) {
+            int valueCount = schema.getValueCount(i);
+            this.counts[i] = new int[valueCount];
+            this.scores[i] = new double[valueCount];
+            this.priorCounts[i] = new double[valueCount];
+            Arrays.fill(this.scores[i], 1);
+            this.estimates[i] = new double[valueCount];
+            Arrays.fill(this.estimates[i], 1);
+            this.previousCounts[i] = new int[valueCount];
+            this.currentCounts[i] = new int[valueCount];
+            this.maxScores[i] = 1;
+            this.weights[i] = 1.0 / this.issueCount;
+        }
+        this.window = new int[2 * windowSize][this.issueCount];
+        this.unchanged = new boolean[this.issueCount];
+    }
+
+    public DomainSchema getSchema() {
+        return this.schema;
+    }
+
+    // Number of offers the model has seen
+    public int getOffers() {
+        return this.offers;
+    }
+
+    // Changes whenever the published estimates change
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Adds an offer of the opponent.
+     *
+     * @param code the DomainSchema code of the offered bid
+     * @param time the progress of the negotiation, in [0,1]
+     */
+    public void update(long code, double time) {
+        int[] ordinals = this.window[this.offers % this.window.length];
+        this.schema.decode(code, ordinals);
+        for (int i = 0; i < this.issueCount; i++) {
+            int count = ++this.counts[i][ordinals[i]];
+            double score = Math.pow(count + this.priorCounts[i][ordinals[i]] + 1, VALUE_EXPONENT);
+            this.scores[i][ordinals[i]] = score;
+            if (score > this.maxScores[i]) {
+                this.maxScores[i] = score;
+            }
+        }
+        this.offers++;
+        if (this.offers % this.windowSize == 0) {
+            if (this.offers >= 2 * this.windowSize) {
+                updateWeights(time);
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Starts the model from what was learned about the opponent in earlier
+     * encounters, instead of from flat weights and values. Should be called
+     * before the first update.
+     *
+     * @param prior a prior that {@link OpponentPrior#matches(DomainSchema)} the
+     *              schema
+     */
+    public void warmStart(OpponentPrior prior) {
+        if (!prior.matches(this.schema)) {
+            throw new IllegalArgumentException("Prior " + prior.getKey() + " is for another domain");
+        }
+        if (prior.getEncounters() == 0) {
+            return;
+        }
+        for (int i = 0; i < this.issueCount; i++) {
+            this.weights[i] = prior.getWeight(i);
+            this.maxScores[i] = 0;
+            for (int v = 0; v < this.scores[i].length; v++) {
+                this.priorCounts[i][v] = PRIOR_OFFERS * prior.getValueFrequency(i, v);
+                this.scores[i][v] = Math.pow(this.counts[i][v] + this.priorCounts[i][v] + 1, VALUE_EXPONENT);
+                this.maxScores[i] = Math.max(this.maxScores[i], this.scores[i][v]);
+            }
+        }
+        publish();
+    }
+
+    // Makes the current scores the estimates
+    private void publish() {
+        for (int i = 0; i < this.issueCount; i++) {
+            for (int v = 0; v < this.scores[i].length; v++) {
+                this.estimates[i][v] = this.scores[i][v] / this.maxScores[i];
+            }
+        }
+        this.version++;
+    }
+
+    public double getWeight(int issue) {
+        return this.weights[issue];
+    }
+
+    public int getCount(int issue, int ordinal) {
+        return this.counts[issue][ordinal];
+    }
+
+    // Estimated utility of the value for the opponent, in (0,1]
+    public double getValueEstimate(int issue, int ordinal) {
+        return this.estimates[issue][ordinal];
+    }
+
+    // Estimated utility of the bid for the opponent
+    public double getUtility(long code) {
+        double utility = 0;
+        for (int i = 0; i < this.issueCount; i++) {
+            int ordinal = this.schema.decodeOrdinal(code, i);
+            utility += this.weights[i] * this.estimates[i][ordinal];
+        }
+        return utility;
+    }
+
+    /**
+     * Laplace smoothed frequency of a value in the previous (window 0) or the
+     * current (window 1) window. Only valid while the window counts are filled.
+     */
+    private double fr(int issue, int ordinal, int window) {
+        int[] windowCounts = window == 0 ? this.previousCounts[issue] : this.currentCounts[issue];
+        return (1.0 + windowCounts[ordinal]) / (this.windowSize + windowCounts.length);
+    }
+
+    // Compares the last two windows of offers and moves weight to the stable issues
+    private void updateWeights(double time) {
+        // offsets of the previous and the current window in the ring
+        int previousStart = (this.offers - 2 * this.windowSize) % this.window.length;
+        int currentStart = (this.offers - this.windowSize) % this.window.length;
+        countWindow(previousStart, this.previousCounts, 1);
+        countWindow(currentStart, this.currentCounts, 1);
+
+        boolean concession = false;
+        int unchangedCount = 0;
+        for (int i = 0; i < this.issueCount; i++) {
+            // values outside both windows have the same frequency in both, so
+            // only the values seen in the windows can make a difference
+            double distance = 0, expectedChange = 0;
+            for (int n = 0; n < 2 * this.windowSize; n++) {
+                int ordinal = this.window[(previousStart + n) % this.window.length][i];
+                if (isFirstInWindows(previousStart, n, i, ordinal)) {
+                    double change = fr(i, ordinal, 1) - fr(i, ordinal, 0);
+                    distance += Math.abs(change) / 2;
+                    // the scores of all offers so far, not only the published ones
+                    expectedChange += change * this.scores[i][ordinal] / this.maxScores[i];
+                }
+            }
+            this.unchanged[i] = distance < UNCHANGED_DISTANCE;
+            if (this.unchanged[i]) {
+                unchangedCount++;
+            } else if (expectedChange < 0) {
+                concession = true;
+            }
+        }
+        if (!concession && unchangedCount > 0 && unchangedCount < this.issueCount) {
+            double delta = ALPHA * (1 - Math.pow(time, BETA));
+            double total = 0;
+            for (int i = 0; i < this.issueCount; i++) {
+                if (this.unchanged[i]) {
+                    this.weights[i] += delta;
+                }
+                total += this.weights[i];
+            }
+            for (int i = 0; i < this.issueCount; i++) {
+                this.weights[i] /= total;
+            }
+        }
+
+        countWindow(previousStart, this.previousCounts, -1);
+        countWindow(currentStart, this.currentCounts, -1);
+    }
+
+    // @return true if the n-th offer from start is the first in both windows with this value
+    private boolean isFirstInWindows(int start, int n, int issue, int ordinal) {
+        for (int m = 0; m < n; m++) {
+            if (this.window[(start + m) % this.window.length][issue] == ordinal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void countWindow(int start, int[][] windowCounts, int step) {
+        for (int n = 0; n < this.windowSize; n++) {
+            int[] ordinals = this.window[(start + n) % this.window.length];
+            for (int i = 0; i < this.issueCount; i++) {
+                windowCounts[i][ordinals[i]] += step;
+            }
+        }
+    }
+}
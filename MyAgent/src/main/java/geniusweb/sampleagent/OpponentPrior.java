@@ -0,0 +1,283 @@
+package geniusweb.sampleagent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * What was learned about an opponent in a domain from earlier encounters: issue
+ * weight estimates, value frequencies and a concession curve. All statistics
+ * are sums over the encounters, so priors learned from different encounters
+ * can be merged in any order.
+ */
+public class OpponentPrior {
+
+    // Number of points of the concession curve, over the normalized session time
+    public static final int CURVE_POINTS = 10;
+
+    private final String opponent;
+    private final String domain;
+    // number of values of each issue, in DomainSchema order
+    private final int[] radices;
+    private final long[] strides;
+    private int encounters = 0;
+    // summed issue weight estimates of all encounters
+    private final double[] weightSums;
+    // valueCounts[i][v]: number of offers with value v for issue i
+    private final long[][] valueCounts;
+    // summed estimated opponent utility of the offers per part of the session
+    private final double[] curveSums = new double[CURVE_POINTS];
+    private final long[] curveCounts = new long[CURVE_POINTS];
+
+    public OpponentPrior(String opponent, String domain, int[] radices) {
+        this.opponent = opponent;
+        this.domain = domain;
+        this.radices = radices.clone();
+        this.strides = new long[radices.length];
+        long stride = 1;
+        for (int i = radices.length - 1; i >= 0; i--) {
+            this.strides[i] = stride;
+            stride *= radices[i];
+        }
+        this.weightSums = new double[radices.length];
+        this.valueCounts = new long[radices.length][];
+        for (int i = 0; i < radices.length; i++) {
+            this.valueCounts[i] = new long[radices[i]];
+        }
+    }
+
+    // An empty prior for the opponent and the domain of the encounter
+    public static OpponentPrior of(EncounterLog.Cursor cursor) {
+        int[] radices = new int[cursor.getIssueCount()];
+        for (int i = 0; i < radices.length; i++) {
+            radices[i] = cursor.getRadix(i);
+        }
+        return new OpponentPrior(getKeyName(cursor.getOpponent()), cursor.getDomain(), radices);
+    }
+
+    /**
+     * Party names in a tournament get a number to make them unique, like
+     * "Agent_12". That number is dropped, the name identifies the opponent.
+     */
+    public static String getKeyName(String party) {
+        int end = party.length();
+        while (end > 0 && Character.isDigit(party.charAt(end - 1))) {
+            end--;
+        }
+        if (end > 0 && end < party.length() && party.charAt(end - 1) == '_') {
+            end--;
+        }
+        return end == 0 ? party : party.substring(0, end);
+    }
+
+    // Key of the prior of an opponent in a domain
+    public static String getKey(String opponent, String domain) {
+        return getKeyName(opponent) + "@" + domain;
+    }
+
+    public String getKey() {
+        return this.opponent + "@" + this.domain;
+    }
+
+    public String getOpponent() {
+        return this.opponent;
+    }
+
+    public String getDomain() {
+        return this.domain;
+    }
+
+    public int getIssueCount() {
+        return this.radices.length;
+    }
+
+    public int getRadix(int issue) {
+        return this.radices[issue];
+    }
+
+    // True if the encounter is in the same domain as this prior
+    public boolean matches(EncounterLog.Cursor cursor) {
+        if (cursor.getIssueCount() != this.radices.length || !cursor.getDomain().equals(this.domain)) {
+            return false;
+        }
+        for (int i = 0; i < this.radices.length; i++) {
+            if (cursor.getRadix(i) != this.radices[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True if the prior was learned in a domain with the same issues and value counts as the schema
+    public boolean matches(DomainSchema schema) {
+        if (schema.getIssueCount() != this.radices.length || !schema.getDomain().getName().equals(this.domain)) {
+            return false;
+        }
+        for (int i = 0; i < this.radices.length; i++) {
+            if (schema.getValueCount(i) != this.radices[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getEncounters() {
+        return this.encounters;
+    }
+
+    // Average weight estimate of the issue, flat if there were no encounters
+    public double getWeight(int issue) {
+        return this.encounters == 0 ? 1.0 / this.radices.length : this.weightSums[issue] / this.encounters;
+    }
+
+    public long getValueCount(int issue, int ordinal) {
+        return this.valueCounts[issue][ordinal];
+    }
+
+    // Fraction of the offers with this value for the issue, 0 if there were none
+    public double getValueFrequency(int issue, int ordinal) {
+        long total = 0;
+        for (long count : this.valueCounts[issue]) {
+            total += count;
+        }
+        return total == 0 ? 0 : (double) this.valueCounts[issue][ordinal] / total;
+    }
+
+    /**
+     * @return the average estimated utility for the opponent of its offers in
+     *         part point of the session, NaN if there were none
+     */
+    public double getConcession(int point) {
+        return this.curveCounts[point] == 0 ? Double.NaN : this.curveSums[point] / this.curveCounts[point];
+    }
+
+    /**
+     * Adds the encounter under the cursor, which has to match this prior.
+     * <p>
+     * The weight of an issue is estimated from how often the opponent kept its
+     * value between successive offers, the utility of its offers from the
+     * value frequencies within the encounter.
+     */
+    public void add(EncounterLog.Cursor cursor) {
+        int issueCount = this.radices.length;
+        int offers = cursor.getOfferCount();
+        this.encounters++;
+        if (offers == 0 || issueCount == 0) {
+            for (int i = 0; i < issueCount; i++) {
+                this.weightSums[i] += 1.0 / issueCount;
+            }
+            return;
+        }
+        long[][] counts = new long[issueCount][];
+        for (int i = 0; i < issueCount; i++) {
+            counts[i] = new long[this.radices[i]];
+        }
+        // kept[i]: number of successive offers with the same value for issue i, plus one
+        double[] kept = new double[issueCount];
+        Arrays.fill(kept, 1);
+        long previous = -1;
+        for (int n = 0; n < offers; n++) {
+            long code = cursor.getOffer(n);
+            for (int i = 0; i < issueCount; i++) {
+                int ordinal = ordinal(code, i);
+                counts[i][ordinal]++;
+                if (previous >= 0 && ordinal(previous, i) == ordinal) {
+                    kept[i]++;
+                }
+            }
+            previous = code;
+        }
+        double total = 0;
+        for (int i = 0; i < issueCount; i++) {
+            total += kept[i];
+        }
+        long[] maxCounts = new long[issueCount];
+        for (int i = 0; i < issueCount; i++) {
+            this.weightSums[i] += kept[i] / total;
+            for (int v = 0; v < this.radices[i]; v++) {
+                this.valueCounts[i][v] += counts[i][v];
+                maxCounts[i] = Math.max(maxCounts[i], counts[i][v]);
+            }
+        }
+        for (int n = 0; n < offers; n++) {
+            long code = cursor.getOffer(n);
+            double utility = 0;
+            for (int i = 0; i < issueCount; i++) {
+                utility += kept[i] / total * counts[i][ordinal(code, i)] / maxCounts[i];
+            }
+            int point = (int) ((long) n * CURVE_POINTS / offers);
+            this.curveSums[point] += utility;
+            this.curveCounts[point]++;
+        }
+    }
+
+    // True if the other prior is for the same opponent and domain
+    public boolean isCompatible(OpponentPrior other) {
+        return getKey().equals(other.getKey()) && Arrays.equals(this.radices, other.radices);
+    }
+
+    // Adds the statistics of the other prior, which has to be compatible
+    public void merge(OpponentPrior other) {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException("Can not merge " + other.getKey() + " into " + getKey());
+        }
+        this.encounters += other.encounters;
+        for (int i = 0; i < this.radices.length; i++) {
+            this.weightSums[i] += other.weightSums[i];
+            for (int v = 0; v < this.radices[i]; v++) {
+                this.valueCounts[i][v] += other.valueCounts[i][v];
+            }
+        }
+        for (int p = 0; p < CURVE_POINTS; p++) {
+            this.curveSums[p] += other.curveSums[p];
+            this.curveCounts[p] += other.curveCounts[p];
+        }
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(this.opponent);
+        out.writeUTF(this.domain);
+        out.writeInt(this.radices.length);
+        for (int radix : this.radices) {
+            out.writeInt(radix);
+        }
+        out.writeInt(this.encounters);
+        for (int i = 0; i < this.radices.length; i++) {
+            out.writeDouble(this.weightSums[i]);
+            for (long count : this.valueCounts[i]) {
+                out.writeLong(count);
+            }
+        }
+        for (int p = 0; p < CURVE_POINTS; p++) {
+            out.writeDouble(this.curveSums[p]);
+            out.writeLong(this.curveCounts[p]);
+        }
+    }
+
+    public static OpponentPrior read(DataInput in) throws IOException {
+        String opponent = in.readUTF();
+        String domain = in.readUTF();
+        int[] radices = new int[in.readInt()];
+        for (int i = 0; i < radices.length; i++) {
+            radices[i] = in.readInt();
+        }
+        OpponentPrior prior = new OpponentPrior(opponent, domain, radices);
+        prior.encounters = in.readInt();
+        for (int i = 0; i < radices.length; i++) {
+            prior.weightSums[i] = in.readDouble();
+            for (int v = 0; v < radices[i]; v++) {
+                prior.valueCounts[i][v] = in.readLong();
+            }
+        }
+        for (int p = 0; p < CURVE_POINTS; p++) {
+            prior.curveSums[p] = in.readDouble();
+            prior.curveCounts[p] = in.readLong();
+        }
+        return prior;
+    }
+
+    private int ordinal(long code, int issue) {
+        return (int) ((code / this.strides[issue]) % this.radices[issue]);
+    }
+}
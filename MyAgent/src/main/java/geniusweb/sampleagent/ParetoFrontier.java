@@ -0,0 +1,143 @@
+package geniusweb.sampleagent;
+
+import java.util.Arrays;
+
+/**
+ * Pareto frontier of the first bids of a {@link BidRanking}, on our utility and
+ * the estimated utility of the opponent. The ranking is already sorted on our
+ * utility, so the frontier is found by one sweep that keeps the best opponent
+ * utility seen so far: a bid is on the frontier if no bid with higher utility
+ * for us is at least as good for the opponent.
+ * <p>
+ * The sweep state is kept per rank. After opponent utilities or the number of
+ * candidates change, {@link #update()} only sweeps again from the first rank
+ * that changed.
+ */
+public class ParetoFrontier {
+
+    private final BidRanking ranking;
+    // number of candidate bids, ranks 0 .. candidates-1
+    private int candidates = 0;
+    private double[] opponentUtilities = new double[64];
+    // bestUpTo[r]: highest opponent utility of the ranks 0 .. r
+    private double[] bestUpTo = new double[64];
+    // ranks on the frontier, ascending
+    private int[] frontier = new int[16];
+    private int frontierSize = 0;
+    // first rank that has to be swept again
+    private int dirty = 0;
+    // frontier positions before this one did not change since the last clearChanged()
+    private int changedFrom = 0;
+
+    public ParetoFrontier(BidRanking ranking) {
+        this.ranking = ranking;
+    }
+
+    public int getCandidates() {
+        return this.candidates;
+    }
+
+    // Sets the candidates to the ranks 0 .. count-1. New ranks need an opponent utility.
+    public void setCandidates(int count) {
+        if (count > this.opponentUtilities.length) {
+            int capacity = Math.max(count, this.opponentUtilities.length * 2);
+            this.opponentUtilities = Arrays.copyOf(this.opponentUtilities, capacity);
+            this.bestUpTo = Arrays.copyOf(this.bestUpTo, capacity);
+        }
+        if (count < this.candidates) {
+            // the last tie group may have lost bids
+            this.dirty = Math.min(this.dirty, Math.max(0, count - 1));
+        } else {
+            this.dirty = Math.min(this.dirty, this.candidates);
+        }
+        this.candidates = count;
+    }
+
+    public double getOpponentUtility(int rank) {
+        return this.opponentUtilities[rank];
+    }
+
+    public void setOpponentUtility(int rank, double utility) {
+        if (this.opponentUtilities[rank] != utility) {
+            this.opponentUtilities[rank] = utility;
+            this.dirty = Math.min(this.dirty, rank);
+        }
+    }
+
+    // Brings the frontier up to date with the candidates and opponent utilities
+    public void update() {
+        if (this.dirty >= this.candidates) {
+            this.dirty = this.candidates;
+            trim(this.candidates);
+            return;
+        }
+        // start at the tie group of the first changed rank
+        int start = this.dirty;
+        double ours = this.ranking.getUtility(start);
+        while (start > 0 && this.ranking.getUtility(start - 1) == ours) {
+            start--;
+        }
+        trim(start);
+        double best = start == 0 ? Double.NEGATIVE_INFINITY : this.bestUpTo[start - 1];
+        int group = start;
+        while (group < this.candidates) {
+            // the tie group of bids with the same utility for us
+            double groupUtility = this.ranking.getUtility(group);
+            int end = group + 1;
+            double groupBest = this.opponentUtilities[group];
+            while (end < this.candidates && this.ranking.getUtility(end) == groupUtility) {
+                groupBest = Math.max(groupBest, this.opponentUtilities[end]);
+                end++;
+            }
+            double upTo = best;
+            for (int rank = group; rank < end; rank++) {
+                upTo = Math.max(upTo, this.opponentUtilities[rank]);
+                this.bestUpTo[rank] = upTo;
+                if (groupBest > best && this.opponentUtilities[rank] == groupBest) {
+                    add(rank);
+                }
+            }
+            best = upTo;
+            group = end;
+        }
+        this.dirty = this.candidates;
+    }
+
+    // Number of bids on the frontier
+    public int size() {
+        return this.frontierSize;
+    }
+
+    // The rank of the i-th frontier bid, in order of decreasing utility for us
+    public int getRank(int i) {
+        return this.frontier[i];
+    }
+
+    /**
+     * @return the first frontier position whose bid or opponent utility may have
+     *         changed since the last {@link #clearChanged()}. The positions
+     *         before it hold the same bids with the same utilities.
+     */
+    public int getChangedFrom() {
+        return this.changedFrom;
+    }
+
+    public void clearChanged() {
+        this.changedFrom = this.frontierSize;
+    }
+
+    private void add(int rank) {
+        if (this.frontierSize == this.frontier.length) {
+            this.frontier = Arrays.copyOf(this.frontier, this.frontier.length * 2);
+        }
+        this.frontier[this.frontierSize++] = rank;
+    }
+
+    // Drops the frontier bids at ranks from .. and higher
+    private void trim(int from) {
+        while (this.frontierSize > 0 && this.frontier[this.frontierSize - 1] >= from) {
+            this.frontierSize--;
+        }
+        this.changedFrom = Math.min(this.changedFrom, this.frontierSize);
+    }
+}
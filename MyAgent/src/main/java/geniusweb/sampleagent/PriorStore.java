@@ -0,0 +1,186 @@
+package geniusweb.sampleagent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * On-disk store of {@link OpponentPrior}s keyed by opponent and domain, read
+ * through a memory mapped file. The file holds an open addressing hash table
+ * of key hashes with the positions of the priors, so a lookup reads a few
+ * slots and one prior, however many priors the store has.
+ * <p>
+ * A store is written at once by {@link #write(File, Collection, long)} and
+ * can not be changed after that. It also holds the position in the encounter
+ * log up to which its priors were learned.
+ */
+public class PriorStore {
+
+    private static final int MAGIC = 0x4d415053; // "MAPS"
+    private static final int VERSION = 1;
+    // header: magic, version, checkpoint, number of slots, number of priors
+    private static final int CHECKPOINT = 8;
+    private static final int SLOT_COUNT = 16;
+    private static final int COUNT = 20;
+    private static final int HEADER_SIZE = 24;
+    // slot: key hash, position of the entry (0 if the slot is empty), length of the entry
+    private static final int SLOT_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int slotCount;
+
+    private PriorStore(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a prior store");
+        }
+        this.slotCount = buffer.getInt(SLOT_COUNT);
+        if (Integer.bitCount(this.slotCount) != 1 || HEADER_SIZE + (long) this.slotCount * SLOT_SIZE > buffer.capacity()) {
+            throw new IOException("Corrupt prior store");
+        }
+    }
+
+    // Maps the store. The mapping stays valid after the file is closed.
+    public static PriorStore open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Prior store too large: " + channel.size());
+            }
+            return new PriorStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Position in the encounter log up to which the priors were learned
+    public long getCheckpoint() {
+        return this.buffer.getLong(CHECKPOINT);
+    }
+
+    public int getCount() {
+        return this.buffer.getInt(COUNT);
+    }
+
+    // @return the prior of the opponent in the domain, null if there is none
+    public OpponentPrior get(String opponent, String domain) throws IOException {
+        byte[] key = OpponentPrior.getKey(opponent, domain).getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        for (int n = 0, slot = (int) hash & (this.slotCount - 1); n < this.slotCount; n++, slot = (slot + 1)
+                & (this.slotCount - 1)) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int entry = this.buffer.getInt(position + 8);
+            if (entry == 0) {
+                return null;
+            }
+            if (this.buffer.getLong(position) == hash && keyEquals(entry, key)) {
+                return read(entry, this.buffer.getInt(position + 12));
+            }
+        }
+        return null;
+    }
+
+    // Reads all priors in the store
+    public List<OpponentPrior> getAll() throws IOException {
+        List<OpponentPrior> priors = new ArrayList<>();
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int entry = this.buffer.getInt(position + 8);
+            if (entry != 0) {
+                priors.add(read(entry, this.buffer.getInt(position + 12)));
+            }
+        }
+        return priors;
+    }
+
+    /**
+     * Writes a store with the priors. The store is written to a new file first
+     * and then moved in place, so readers never see half a store.
+     *
+     * @param checkpoint position in the encounter log up to which the priors
+     *                   were learned
+     */
+    public static void write(File file, Collection<OpponentPrior> priors, long checkpoint) throws IOException {
+        // at most half of the slots are used, to keep the probe sequences short
+        int slotCount = Integer.highestOneBit(Math.max(1, priors.size()) * 2 - 1) * 2;
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(entries);
+        ByteBuffer slots = ByteBuffer.allocate(slotCount * SLOT_SIZE);
+        int dataStart = HEADER_SIZE + slotCount * SLOT_SIZE;
+        for (OpponentPrior prior : priors) {
+            byte[] key = prior.getKey().getBytes(StandardCharsets.UTF_8);
+            long hash = hash(key);
+            int slot = (int) hash & (slotCount - 1);
+            while (slots.getInt(slot * SLOT_SIZE + 8) != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            int entry = dataStart + out.size();
+            out.writeShort(key.length);
+            out.write(key);
+            prior.write(out);
+            slots.putLong(slot * SLOT_SIZE, hash);
+            slots.putInt(slot * SLOT_SIZE + 8, entry);
+            slots.putInt(slot * SLOT_SIZE + 12, dataStart + out.size() - entry);
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(CHECKPOINT, checkpoint);
+        header.putInt(SLOT_COUNT, slotCount);
+        header.putInt(COUNT, priors.size());
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer part : new ByteBuffer[] { header, slots, ByteBuffer.wrap(entries.toByteArray()) }) {
+                while (part.hasRemaining()) {
+                    channel.write(part);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private boolean keyEquals(int entry, byte[] key) {
+        if (this.buffer.getShort(entry) != key.length) {
+            return false;
+        }
+        for (int b = 0; b < key.length; b++) {
+            if (this.buffer.get(entry + 2 + b) != key[b]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private OpponentPrior read(int entry, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = this.buffer.duplicate();
+        source.position(entry);
+        source.get(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(in.readShort()); // the key
+        return OpponentPrior.read(in);
+    }
+
+    // 64 bit FNV-1a
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
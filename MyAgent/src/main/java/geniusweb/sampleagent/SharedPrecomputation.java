@@ -0,0 +1,190 @@
+package geniusweb.sampleagent;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Immutable precomputed structures, like {@link DomainSchema}s and
+ * {@link BidTable}s, shared by all agents in the JVM. A value is created once
+ * per key and counted while agents hold it. When no agent holds it anymore it
+ * is only softly referenced, so it is kept for the next session with the same
+ * key until the heap gets short.
+ * <p>
+ * Thread safe. The values must not be changed by the agents.
+ */
+public class SharedPrecomputation<K, V> {
+
+    private final ConcurrentHashMap<K, Slot<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param factory creates the value if it is not shared yet. Other agents
+     *                asking for the same key wait for it.
+     * @return a handle on the shared value, to be closed when the agent is done
+     *         with it
+     */
+    public Handle<V> acquire(K key, Supplier<V> factory) {
+        while (true) {
+            Slot<V> entry = this.entries.computeIfAbsent(key, k -> new Slot<>());
+            CompletableFuture<V> pending;
+            boolean create = false;
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue; // removed while we were waiting, start over
+                }
+                V value = entry.strong != null ? entry.strong : entry.soft == null ? null : entry.soft.get();
+                if (value != null) {
+                    entry.strong = value;
+                    entry.soft = null;
+                    entry.references++;
+                    return new Handle<>(this, key, entry, value);
+                }
+                if (entry.pending == null) {
+                    entry.pending = new CompletableFuture<>();
+                    create = true;
+                }
+                pending = entry.pending;
+            }
+            if (create) {
+                return create(key, entry, pending, factory);
+            }
+            try {
+                pending.join();
+            } catch (CompletionException e) {
+                // the factory failed for the agent that ran it, this one tries again
+            }
+        }
+    }
+
+    // Runs the factory outside the lock, so that purges and other keys do not wait for it
+    private Handle<V> create(K key, Slot<V> entry, CompletableFuture<V> pending, Supplier<V> factory) {
+        V value;
+        try {
+            value = factory.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (entry) {
+                entry.pending = null;
+            }
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (entry) {
+            entry.pending = null;
+            entry.strong = value;
+            entry.soft = null;
+            entry.references++;
+        }
+        pending.complete(value);
+        return new Handle<>(this, key, entry, value);
+    }
+
+    // Number of keys with a value that is held or not yet collected
+    public int size() {
+        int size = 0;
+        for (Slot<V> entry : this.entries.values()) {
+            synchronized (entry) {
+                if (entry.strong != null || (entry.soft != null && entry.soft.get() != null)) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    private void release(K key, Slot<V> entry) {
+        synchronized (entry) {
+            if (--entry.references == 0 && !entry.removed) {
+                entry.soft = new SoftReference<>(entry.strong);
+                entry.strong = null;
+            }
+        }
+        purge();
+    }
+
+    private void remove(K key, Slot<V> entry) {
+        synchronized (entry) {
+            entry.removed = true;
+            this.entries.remove(key, entry);
+        }
+    }
+
+    // Drops the entries whose values were collected
+    private void purge() {
+        for (Map.Entry<K, Slot<V>> mapEntry : this.entries.entrySet()) {
+            Slot<V> slot = mapEntry.getValue();
+            synchronized (slot) {
+                if (slot.references == 0 && slot.soft != null && slot.soft.get() == null) {
+                    slot.removed = true;
+                    this.entries.remove(mapEntry.getKey(), slot);
+                }
+            }
+        }
+    }
+
+    private static class Slot<V> {
+        // number of open handles
+        private int references = 0;
+        // the value while it is held
+        private V strong;
+        // the value after it was released
+        private SoftReference<V> soft;
+        // the value while an agent creates it
+        private CompletableFuture<V> pending;
+        // true after the entry left the map
+        private boolean removed = false;
+    }
+
+    /**
+     * An agent's hold on a shared value.
+     */
+    public static class Handle<V> implements AutoCloseable {
+        private final SharedPrecomputation<?, V> owner;
+        private final Object key;
+        private final Slot<V> entry;
+        private final V value;
+        private boolean closed = false;
+
+        private <K> Handle(SharedPrecomputation<K, V> owner, K key, Slot<V> entry, V value) {
+            this.owner = owner;
+            this.key = key;
+            this.entry = entry;
+            this.value = value;
+        }
+
+        public V get() {
+            return this.value;
+        }
+
+        /**
+         * Releases the value and makes sure no later session gets it, for
+         * instance because it turned out to be incomplete. Agents that hold it
+         * keep it.
+         */
+        public void evict() {
+            release(this.owner, true);
+        }
+
+        // Releases the hold on the value. Can be called more than once.
+        @Override
+        public void close() {
+            release(this.owner, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K> void release(SharedPrecomputation<K, V> owner, boolean evict) {
+            synchronized (this.entry) {
+                if (evict) {
+                    owner.remove((K) this.key, this.entry);
+                }
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+            }
+            owner.release((K) this.key, this.entry);
+        }
+    }
+}
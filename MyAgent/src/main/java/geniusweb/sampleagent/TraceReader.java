@@ -0,0 +1,313 @@
+package geniusweb.sampleagent;
+
+import geniusweb.actions.Accept;
+import geniusweb.actions.Action;
+import geniusweb.actions.EndNegotiation;
+import geniusweb.actions.LearningDone;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Inform;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.NumberValueSet;
+import geniusweb.issuevalue.Range;
+import geniusweb.issuevalue.Value;
+import geniusweb.issuevalue.ValueSet;
+import geniusweb.profile.utilityspace.DiscreteValueSetUtilities;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+import geniusweb.profile.utilityspace.NumberValueSetUtilities;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+import geniusweb.progress.Progress;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a trace written by a {@link TraceRecorder}, one event at a time.
+ */
+public class TraceReader implements Closeable {
+
+    private final DataInputStream in;
+
+    public TraceReader(File file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        if (this.in.readInt() != TraceRecorder.MAGIC) {
+            this.in.close();
+            throw new IOException(file + " is not a trace");
+        }
+        int version = this.in.readInt();
+        if (version != TraceRecorder.VERSION) {
+            this.in.close();
+            throw new IOException("Can not read version " + version + " of trace " + file);
+        }
+    }
+
+    // @return the next event, null at the end of the trace
+    public Event next() throws IOException {
+        int type = this.in.read();
+        if (type < 0) {
+            return null;
+        }
+        switch (type) {
+        case TraceRecorder.SETTINGS:
+            PartyId id = new PartyId(this.in.readUTF());
+            ProfileRef profileRef = new ProfileRef(URI.create(this.in.readUTF()));
+            ProtocolRef protocol = new ProtocolRef(URI.create(this.in.readUTF()));
+            Progress progress = readProgress();
+            Parameters parameters = readParameters();
+            Settings settings = new Settings(id, profileRef, protocol, progress, parameters);
+            return new Event(TraceRecorder.SETTINGS, settings, readProfile(), null, 0, false, 0);
+        case TraceRecorder.ACTION_DONE:
+            return new Event(TraceRecorder.ACTION_DONE, new ActionDone(readAction()), null, null, 0, false, 0);
+        case TraceRecorder.YOUR_TURN:
+            return new Event(TraceRecorder.YOUR_TURN, new YourTurn(), null, null, 0, false, 0);
+        case TraceRecorder.FINISHED:
+            int count = this.in.readInt();
+            Map<PartyId, Bid> agreements = new HashMap<>();
+            for (int n = 0; n < count; n++) {
+                agreements.put(new PartyId(this.in.readUTF()), readBid());
+            }
+            return new Event(TraceRecorder.FINISHED, new Finished(new Agreements(agreements)), null, null, 0, false,
+                    0);
+        case TraceRecorder.DECISION:
+            Action action = readAction();
+            long nanos = this.in.readLong();
+            boolean fallback = this.in.readBoolean();
+            return new Event(TraceRecorder.DECISION, null, null, action, nanos, fallback, 0);
+        case TraceRecorder.CLOCK:
+            return new Event(TraceRecorder.CLOCK, null, null, null, 0, false, this.in.readLong());
+        default:
+            throw new IOException("Unknown trace record " + type);
+        }
+    }
+
+    // All events of the trace, from the start
+    public static List<Event> readAll(File file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (TraceReader reader = new TraceReader(file)) {
+            for (Event event = reader.next(); event != null; event = reader.next()) {
+                events.add(event);
+            }
+        } catch (EOFException e) {
+            // the recording was cut off, the events up to there are still good
+        }
+        return events;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    private Progress readProgress() throws IOException {
+        byte type = this.in.readByte();
+        if (type == TraceRecorder.ROUNDS) {
+            int total = this.in.readInt();
+            int current = this.in.readInt();
+            return new ProgressRounds(total, current, new Date(this.in.readLong()));
+        } else if (type == TraceRecorder.TIME) {
+            long duration = this.in.readLong();
+            return new ProgressTime(duration, new Date(this.in.readLong()));
+        }
+        throw new IOException("Unknown progress " + type);
+    }
+
+    private Parameters readParameters() throws IOException {
+        int count = this.in.readInt();
+        Map<String, Object> parameters = new HashMap<>();
+        for (int n = 0; n < count; n++) {
+            String key = this.in.readUTF();
+            byte type = this.in.readByte();
+            switch (type) {
+            case TraceRecorder.STRING:
+                parameters.put(key, this.in.readUTF());
+                break;
+            case TraceRecorder.LONG:
+                parameters.put(key, this.in.readLong());
+                break;
+            case TraceRecorder.DOUBLE:
+                parameters.put(key, this.in.readDouble());
+                break;
+            case TraceRecorder.BOOLEAN:
+                parameters.put(key, this.in.readBoolean());
+                break;
+            case TraceRecorder.STRINGS:
+                int size = this.in.readInt();
+                List<String> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(this.in.readUTF());
+                }
+                parameters.put(key, list);
+                break;
+            default:
+                throw new IOException("Unknown parameter type " + type);
+            }
+        }
+        return new Parameters(parameters);
+    }
+
+    private LinearAdditive readProfile() throws IOException {
+        String name = this.in.readUTF();
+        String domainName = this.in.readUTF();
+        int issues = this.in.readInt();
+        Map<String, ValueSet> values = new HashMap<>();
+        Map<String, ValueSetUtilities> utilities = new HashMap<>();
+        Map<String, BigDecimal> weights = new HashMap<>();
+        for (int i = 0; i < issues; i++) {
+            String issue = this.in.readUTF();
+            weights.put(issue, new BigDecimal(this.in.readUTF()));
+            byte type = this.in.readByte();
+            if (type == TraceRecorder.DISCRETE) {
+                int size = this.in.readInt();
+                List<DiscreteValue> discrete = new ArrayList<>(size);
+                Map<DiscreteValue, BigDecimal> valueUtilities = new HashMap<>();
+                for (int v = 0; v < size; v++) {
+                    DiscreteValue value = new DiscreteValue(this.in.readUTF());
+                    discrete.add(value);
+                    valueUtilities.put(value, new BigDecimal(this.in.readUTF()));
+                }
+                values.put(issue, new DiscreteValueSet(discrete));
+                utilities.put(issue, new DiscreteValueSetUtilities(valueUtilities));
+            } else if (type == TraceRecorder.NUMBER) {
+                BigDecimal[] decimals = new BigDecimal[7];
+                for (int d = 0; d < decimals.length; d++) {
+                    decimals[d] = new BigDecimal(this.in.readUTF());
+                }
+                values.put(issue, new NumberValueSet(new Range(decimals[0], decimals[1], decimals[2])));
+                utilities.put(issue, new NumberValueSetUtilities(decimals[3], decimals[4], decimals[5], decimals[6]));
+            } else {
+                throw new IOException("Unknown value set " + type);
+            }
+        }
+        Bid reservation = this.in.readBoolean() ? readBid() : null;
+        return new LinearAdditiveUtilitySpace(new Domain(domainName, values), name, utilities, weights, reservation);
+    }
+
+    private Action readAction() throws IOException {
+        byte type = this.in.readByte();
+        if (type == TraceRecorder.NONE) {
+            return null;
+        }
+        PartyId actor = new PartyId(this.in.readUTF());
+        switch (type) {
+        case TraceRecorder.OFFER:
+            return new Offer(actor, readBid());
+        case TraceRecorder.ACCEPT:
+            return new Accept(actor, readBid());
+        case TraceRecorder.END_NEGOTIATION:
+            return new EndNegotiation(actor);
+        case TraceRecorder.LEARNING_DONE:
+            return new LearningDone(actor);
+        default:
+            throw new IOException("Unknown action " + type);
+        }
+    }
+
+    private Bid readBid() throws IOException {
+        int size = this.in.readInt();
+        Map<String, Value> values = new LinkedHashMap<>();
+        for (int n = 0; n < size; n++) {
+            String issue = this.in.readUTF();
+            byte type = this.in.readByte();
+            String value = this.in.readUTF();
+            values.put(issue, type == TraceRecorder.NUMBER ? new NumberValue(new BigDecimal(value))
+                    : new DiscreteValue(value));
+        }
+        return new Bid(values);
+    }
+
+    /**
+     * One record of a trace. Depending on the type it has an inform, the
+     * settings also have the profile, a decision has the action with its
+     * timing, and a clock reading has the time.
+     */
+    public static class Event {
+        private final byte type;
+        private final Inform inform;
+        private final LinearAdditive profile;
+        private final Action action;
+        private final long nanos;
+        private final boolean fallback;
+        private final long clock;
+
+        private Event(byte type, Inform inform, LinearAdditive profile, Action action, long nanos, boolean fallback,
+                long clock) {
+            this.type = type;
+            this.inform = inform;
+            this.profile = profile;
+            this.action = action;
+            this.nanos = nanos;
+            this.fallback = fallback;
+            this.clock = clock;
+        }
+
+        public boolean isInform() {
+            return this.inform != null;
+        }
+
+        public boolean isDecision() {
+            return this.type == TraceRecorder.DECISION;
+        }
+
+        public boolean isClock() {
+            return this.type == TraceRecorder.CLOCK;
+        }
+
+        // The inform the agent got, null for decisions and clock readings
+        public Inform getInform() {
+            return this.inform;
+        }
+
+        // The profile of the settings, null for other events
+        public LinearAdditive getProfile() {
+            return this.profile;
+        }
+
+        // The action of a decision
+        public Action getAction() {
+            return this.action;
+        }
+
+        // Time the decision took in ns
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        // True if the decision was the fallback because the plan was late
+        public boolean isFallback() {
+            return this.fallback;
+        }
+
+        // The time of a clock reading in ms
+        public long getClock() {
+            return this.clock;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package geniusweb.sampleagent;
+
+import geniusweb.actions.Accept;
+import geniusweb.actions.Action;
+import geniusweb.actions.EndNegotiation;
+import geniusweb.actions.LearningDone;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Inform;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.NumberValueSet;
+import geniusweb.issuevalue.Value;
+import geniusweb.issuevalue.ValueSet;
+import geniusweb.profile.utilityspace.DiscreteValueSetUtilities;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.NumberValueSetUtilities;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+import geniusweb.progress.Progress;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
+import geniusweb.references.Parameters;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records a negotiation session of the agent in a compact binary trace: the
+ * informs it got, with the settings and the profile, the actions it decided on
+ * with the time each turn took, and every reading of the clock. A
+ * {@link TraceReader} reads the trace back, so the session can be replayed
+ * with the same clock.
+ * <p>
+ * Writing is buffered. A write error stops the recording and is kept in
+ * {@link #getError()}, it never fails the session. Thread safe.
+ */
+public class TraceRecorder implements Closeable {
+
+    static final int MAGIC = 0x4d415452; // "MATR"
+    static final int VERSION = 1;
+    // record types
+    static final byte SETTINGS = 1;
+    static final byte ACTION_DONE = 2;
+    static final byte YOUR_TURN = 3;
+    static final byte FINISHED = 4;
+    static final byte DECISION = 5;
+    static final byte CLOCK = 6;
+    // action, value, progress and parameter types
+    static final byte NONE = 0;
+    static final byte OFFER = 1;
+    static final byte ACCEPT = 2;
+    static final byte END_NEGOTIATION = 3;
+    static final byte LEARNING_DONE = 4;
+    static final byte DISCRETE = 1;
+    static final byte NUMBER = 2;
+    static final byte ROUNDS = 1;
+    static final byte TIME = 2;
+    static final byte STRING = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte BOOLEAN = 4;
+    static final byte STRINGS = 5;
+
+    private final DataOutputStream out;
+    private IOException error;
+
+    public TraceRecorder(File file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+    }
+
+    // The settings of the session with the profile they refer to
+    public synchronized void settings(Settings settings, LinearAdditive profile) {
+        if (this.error != null) {
+            return;
+        }
+        try {
+            this.out.writeByte(SETTINGS);
+            this.out.writeUTF(settings.getID().getName());
+            this.out.writeUTF(settings.getProfile().getURI().toString());
+            this.out.writeUTF(settings.getProtocol().getURI().toString());
+            writeProgress(settings.getProgress());
+            writeParameters(settings.getParameters());
+            writeProfile(profile);
+        } catch (IOException e) {
+            this.error = e;
+        }
+    }
+
+    // An ActionDone, YourTurn or Finished, other informs are not recorded
+    public synchronized void inform(Inform info) {
+        if (this.error != null) {
+            return;
+        }
+        try {
+            if (info instanceof ActionDone) {
+                this.out.writeByte(ACTION_DONE);
+                writeAction(((ActionDone) info).getAction());
+            } else if (info instanceof YourTurn) {
+                this.out.writeByte(YOUR_TURN);
+            } else if (info instanceof Finished) {
+                this.out.writeByte(FINISHED);
+                Map<PartyId, Bid> agreements = ((Finished) info).getAgreement().getMap();
+                this.out.writeInt(agreements.size());
+                for (Map.Entry<PartyId, Bid> agreement : agreements.entrySet()) {
+                    this.out.writeUTF(agreement.getKey().getName());
+                    writeBid(agreement.getValue());
+                }
+            }
+        } catch (IOException e) {
+            this.error = e;
+        }
+    }
+
+    /**
+     * The action the agent took on its turn.
+     *
+     * @param nanos    time from YourTurn until the action was sent
+     * @param fallback true if the planned action was not ready in time
+     */
+    public synchronized void decision(Action action, long nanos, boolean fallback) {
+        if (this.error != null) {
+            return;
+        }
+        try {
+            this.out.writeByte(DECISION);
+            writeAction(action);
+            this.out.writeLong(nanos);
+            this.out.writeBoolean(fallback);
+        } catch (IOException e) {
+            this.error = e;
+        }
+    }
+
+    // A reading of the agent's clock
+    public synchronized void clock(long millis) {
+        if (this.error != null) {
+            return;
+        }
+        try {
+            this.out.writeByte(CLOCK);
+            this.out.writeLong(millis);
+        } catch (IOException e) {
+            this.error = e;
+        }
+    }
+
+    // The error that stopped the recording, null if there was none
+    public synchronized IOException getError() {
+        return this.error;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.out.close();
+    }
+
+    private void writeProgress(Progress progress) throws IOException {
+        if (progress instanceof ProgressRounds) {
+            ProgressRounds rounds = (ProgressRounds) progress;
+            this.out.writeByte(ROUNDS);
+            this.out.writeInt(rounds.getTotalRounds());
+            this.out.writeInt(rounds.getCurrentRound());
+            this.out.writeLong(rounds.getTerminationTime().getTime());
+        } else if (progress instanceof ProgressTime) {
+            ProgressTime time = (ProgressTime) progress;
+            this.out.writeByte(TIME);
+            this.out.writeLong(time.getDuration());
+            this.out.writeLong(time.getStart().getTime());
+        } else {
+            throw new IOException("Can not record progress " + progress);
+        }
+    }
+
+    // Strings, numbers, booleans and lists of strings, other parameters are left out
+    private void writeParameters(Parameters parameters) throws IOException {
+        // the real Parameters can not be iterated, so the keys MyAgent reads are tried
+        int count = 0;
+        for (String key : MyAgent.PARAMETERS) {
+            if (isRecorded(parameters.get(key))) {
+                count++;
+            }
+        }
+        this.out.writeInt(count);
+        for (String key : MyAgent.PARAMETERS) {
+            Object value = parameters.get(key);
+            if (!isRecorded(value)) {
+                continue;
+            }
+            this.out.writeUTF(key);
+            if (value instanceof String) {
+                this.out.writeByte(STRING);
+                this.out.writeUTF((String) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                this.out.writeByte(LONG);
+                this.out.writeLong(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                this.out.writeByte(DOUBLE);
+                this.out.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                this.out.writeByte(BOOLEAN);
+                this.out.writeBoolean((Boolean) value);
+            } else {
+                List<?> list = (List<?>) value;
+                this.out.writeByte(STRINGS);
+                this.out.writeInt(list.size());
+                for (Object element : list) {
+                    this.out.writeUTF((String) element);
+                }
+            }
+        }
+    }
+
+    private static boolean isRecorded(Object value) {
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!(element instanceof String)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    private void writeProfile(LinearAdditive profile) throws IOException {
+        Domain domain = profile.getDomain();
+        this.out.writeUTF(profile.getName());
+        this.out.writeUTF(domain.getName());
+        this.out.writeInt(domain.getIssues().size());
+        for (String issue : domain.getIssues()) {
+            this.out.writeUTF(issue);
+            this.out.writeUTF(profile.getWeight(issue).toString());
+            ValueSet values = domain.getValues(issue);
+            ValueSetUtilities utilities = profile.getUtilities().get(issue);
+            if (values instanceof DiscreteValueSet && utilities instanceof DiscreteValueSetUtilities) {
+                List<DiscreteValue> discrete = ((DiscreteValueSet) values).getValues();
+                this.out.writeByte(DISCRETE);
+                this.out.writeInt(discrete.size());
+                for (DiscreteValue value : discrete) {
+                    this.out.writeUTF(value.getValue());
+                    this.out.writeUTF(utilities.getUtility(value).toString());
+                }
+            } else if (values instanceof NumberValueSet && utilities instanceof NumberValueSetUtilities) {
+                NumberValueSetUtilities number = (NumberValueSetUtilities) utilities;
+                NumberValueSet range = (NumberValueSet) values;
+                this.out.writeByte(NUMBER);
+                for (BigDecimal decimal : new BigDecimal[] { range.getRange().getLow(), range.getRange().getHigh(),
+                        range.getRange().getStep(), number.getLowValue(), number.getLowUtility(),
+                        number.getHighValue(), number.getHighUtility() }) {
+                    this.out.writeUTF(decimal.toString());
+                }
+            } else {
+                throw new IOException("Can not record the utilities of issue " + issue);
+            }
+        }
+        Bid reservation = profile.getReservationBid();
+        this.out.writeBoolean(reservation != null);
+        if (reservation != null) {
+            writeBid(reservation);
+        }
+    }
+
+    private void writeAction(Action action) throws IOException {
+        if (action instanceof Offer) {
+            this.out.writeByte(OFFER);
+        } else if (action instanceof Accept) {
+            this.out.writeByte(ACCEPT);
+        } else if (action instanceof EndNegotiation) {
+            this.out.writeByte(END_NEGOTIATION);
+        } else if (action instanceof LearningDone) {
+            this.out.writeByte(LEARNING_DONE);
+        } else {
+            this.out.writeByte(NONE);
+            return;
+        }
+        this.out.writeUTF(action.getActor().getName());
+        if (action instanceof Offer) {
+            writeBid(((Offer) action).getBid());
+        } else if (action instanceof Accept) {
+            writeBid(((Accept) action).getBid());
+        }
+    }
+
+    private void writeBid(Bid bid) throws IOException {
+        this.out.writeInt(bid.getIssues().size());
+        for (Map.Entry<String, Value> value : bid.getIssueValues().entrySet()) {
+            this.out.writeUTF(value.getKey());
+            if (value.getValue() instanceof NumberValue) {
+                this.out.writeByte(NUMBER);
+                this.out.writeUTF(((NumberValue) value.getValue()).getValue().toString());
+            } else {
+                this.out.writeByte(DISCRETE);
+                this.out.writeUTF(((DiscreteValue) value.getValue()).getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package geniusweb.sampleagent;
+
+/**
+ * Inverted index of the best bids of a {@link BidRanking}: for every value of
+ * every issue a bitset of the ranks of the bids that have it. Because the bits
+ * are in rank order, the bids with a utility above a threshold are a prefix of
+ * every bitset, and the queries work on 64 bids per step.
+ * <p>
+ * Answers which bids have a value, and which bid above a threshold is nearest
+ * to a given bid: the one that matches the most issue weight, and of those the
+ * best for us. The nearest bid is found by a branch and bound over the issues,
+ * heaviest first, that intersects the bitsets and drops the branches that can
+ * not match more weight than the best bid found so far.
+ * <p>
+ * Not thread safe, the queries share scratch space.
+ */
+public class ValueIndex {
+
+    private final DomainSchema schema;
+    private final int size;
+    private final int words;
+    // bits[issue][ordinal] has bit r set if the bid of rank r has that value
+    private final long[][][] bits;
+    // scratch space of the queries
+    private final int[] target;
+    private final int[] order;
+    private final double[] orderWeights;
+    private final double[] remaining;
+    private final long[][] sets;
+    private double bestScore;
+    private int bestRank;
+
+    /**
+     * @param size number of best bids to index, at most the size of the
+     *             ranking
+     */
+    public ValueIndex(DomainSchema schema, BidRanking ranking, int size) {
+        if (size < 0 || size > ranking.size()) {
+            throw new IllegalArgumentException("Can not index " + size + " of " + ranking.size() + " bids");
+        }
+        int issueCount = schema.getIssueCount();
+        this.schema = schema;
+        this.size = size;
+        this.words = (size + 63) >>> 6;
+        this.bits = new long[issueCount][][];
+        for (int i = 0; i < issueCount; i++) {
+            this.bits[i] = new long[schema.getValueCount(i)][this.words];
+        }
+        this.target = new int[issueCount];
+        this.order = new int[issueCount];
+        this.orderWeights = new double[issueCount];
+        this.remaining = new double[issueCount + 1];
+        this.sets = new long[issueCount + 1][this.words];
+        int[] ordinals = new int[issueCount];
+        for (int rank = 0; rank < size; rank++) {
+            schema.decode(ranking.getCode(rank), ordinals);
+            for (int i = 0; i < issueCount; i++) {
+                this.bits[i][ordinals[i]][rank >>> 6] |= 1L << rank;
+            }
+        }
+    }
+
+    // Number of bids in the index, the best ones of the ranking
+    public int size() {
+        return this.size;
+    }
+
+    // @return number of the bids of rank below candidates that have the value
+    public int countWithValue(int issue, int ordinal, int candidates) {
+        long[] set = this.bits[issue][ordinal];
+        int end = Math.min(candidates, this.size);
+        int count = 0;
+        for (int w = 0; w < end >>> 6; w++) {
+            count += Long.bitCount(set[w]);
+        }
+        if ((end & 63) != 0) {
+            count += Long.bitCount(set[end >>> 6] & ((1L << end) - 1));
+        }
+        return count;
+    }
+
+    // @return the first rank from (inclusive) to (exclusive) of a bid with the value, or -1 if there is none
+    public int nextWithValue(int issue, int ordinal, int from, int to) {
+        long[] set = this.bits[issue][ordinal];
+        int end = Math.min(to, this.size);
+        if (from >= end) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = set[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int rank = (w << 6) + Long.numberOfTrailingZeros(word);
+                return rank < end ? rank : -1;
+            }
+            if (++w >= this.words || w << 6 >= end) {
+                return -1;
+            }
+            word = set[w];
+        }
+    }
+
+    /**
+     * Finds the bid among the best candidates that is nearest to the given bid.
+     *
+     * @param code       code of the bid to be near to, it does not have to be
+     *                   in the index
+     * @param weights    weight of each issue, the distance of two bids is the
+     *                   weight of the issues where they differ. Null to weigh
+     *                   all issues 1, which is the Hamming distance.
+     * @param candidates only the bids of rank below this are considered, for
+     *                   example the bids above a utility threshold
+     * @return the rank of the nearest bid, the lowest rank if several are as
+     *         near, or -1 if there are no candidates
+     */
+    public int nearest(long code, double[] weights, int candidates) {
+        int end = Math.min(candidates, this.size);
+        if (end <= 0) {
+            return -1;
+        }
+        int issueCount = this.target.length;
+        this.schema.decode(code, this.target);
+        // heaviest issues first, they decide most
+        for (int i = 0; i < issueCount; i++) {
+            double weight = weights == null ? 1 : weights[i];
+            int j = i;
+            while (j > 0 && this.orderWeights[j - 1] < weight) {
+                this.order[j] = this.order[j - 1];
+                this.orderWeights[j] = this.orderWeights[j - 1];
+                j--;
+            }
+            this.order[j] = i;
+            this.orderWeights[j] = weight;
+        }
+        this.remaining[issueCount] = 0;
+        for (int d = issueCount - 1; d >= 0; d--) {
+            this.remaining[d] = this.remaining[d + 1] + this.orderWeights[d];
+        }
+        long[] all = this.sets[0];
+        int full = end >>> 6;
+        for (int w = 0; w < this.words; w++) {
+            all[w] = w < full ? -1L : w == full && (end & 63) != 0 ? (1L << end) - 1 : 0;
+        }
+        this.bestScore = Double.NEGATIVE_INFINITY;
+        this.bestRank = Integer.MAX_VALUE;
+        search(0, 0, 0);
+        return this.bestRank;
+    }
+
+    // Searches the bids in sets[depth], whose lowest rank is first, that matched score on the issues before depth
+    private void search(int depth, double score, int first) {
+        double bound = score + this.remaining[depth];
+        if (bound < this.bestScore || (bound == this.bestScore && first >= this.bestRank)) {
+            return;
+        }
+        if (depth == this.order.length) {
+            this.bestScore = score;
+            this.bestRank = first;
+            return;
+        }
+        int issue = this.order[depth];
+        long[] value = this.bits[issue][this.target[issue]];
+        long[] set = this.sets[depth];
+        long[] next = this.sets[depth + 1];
+        // the bids that match the issue
+        int nextFirst = -1;
+        for (int w = 0; w < this.words; w++) {
+            next[w] = set[w] & value[w];
+            if (nextFirst < 0 && next[w] != 0) {
+                nextFirst = (w << 6) + Long.numberOfTrailingZeros(next[w]);
+            }
+        }
+        if (nextFirst >= 0) {
+            search(depth + 1, score + this.orderWeights[depth], nextFirst);
+        }
+        // the bids that do not, next is free again after the search above
+        nextFirst = -1;
+        for (int w = 0; w < this.words; w++) {
+            next[w] = set[w] & ~value[w];
+            if (nextFirst < 0 && next[w] != 0) {
+                nextFirst = (w << 6) + Long.numberOfTrailingZeros(next[w]);
+            }
+        }
+        if (nextFirst >= 0) {
+            search(depth + 1, score, nextFirst);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+import tudelft.utilities.logging.Reporter;
+
+public class AgentLogTest {
+
+	// Collects the messages, optionally waiting for a latch first
+	private static class ListReporter implements Reporter {
+		private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		private final CountDownLatch latch;
+
+		ListReporter(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void log(Level level, String msg) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			messages.add(level + " " + msg);
+		}
+
+		@Override
+		public void log(Level level, String msg, Throwable thrown) {
+			log(level, msg);
+		}
+	}
+
+	@Test
+	public void testFormat() {
+		assertEquals("plain", AgentLog.format("plain", null, null, null, 0));
+		assertEquals("a=1, b=x", AgentLog.format("a={}, b={}", 1, "x", null, 2));
+		assertEquals("1 2 3", AgentLog.format("{} {} {}", 1, 2, 3, 3));
+		assertEquals("only 1", AgentLog.format("only {}", 1, 2, null, 2));
+		assertEquals("missing {}", AgentLog.format("missing {}", null, null, null, 0));
+	}
+
+	@Test
+	public void testLevel() {
+		ListReporter reporter = new ListReporter(new CountDownLatch(0));
+		AgentLog log = new AgentLog(reporter, Level.INFO);
+		assertFalse(log.isLoggable(Level.FINE));
+		assertTrue(log.isLoggable(Level.WARNING));
+		log.log(Level.FINE, "fine {}", 1);
+		log.log(Level.INFO, "info {}", 2);
+		assertTrue(log.flush(1000));
+		assertEquals(Collections.singletonList("INFO info 2"), reporter.messages);
+		assertFalse(new AgentLog(reporter, Level.OFF).isLoggable(Level.SEVERE));
+	}
+
+	@Test
+	public void testOrderFromThreads() throws InterruptedException {
+		ListReporter reporter = new ListReporter(new CountDownLatch(0));
+		AgentLog log = new AgentLog(reporter, Level.ALL, 8192);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int thread = t;
+			threads.add(new Thread(() -> {
+				for (int n = 0; n < 1000; n++) {
+					log.log(Level.INFO, "{} {}", thread, n);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(log.flush(5000));
+		assertEquals(0, log.getDropped());
+		assertEquals(4000, reporter.messages.size());
+		// the records of each thread come out in the order they were logged
+		int[] next = new int[4];
+		for (String message : reporter.messages) {
+			String[] parts = message.split(" ");
+			int thread = Integer.parseInt(parts[1]);
+			assertEquals(next[thread]++, Integer.parseInt(parts[2]));
+		}
+	}
+
+	@Test
+	public void testFullBufferDrops() {
+		CountDownLatch latch = new CountDownLatch(1);
+		ListReporter reporter = new ListReporter(latch);
+		AgentLog log = new AgentLog(reporter, Level.INFO, 4);
+		for (int n = 0; n < 10; n++) {
+			log.log(Level.INFO, "record {}", n);
+		}
+		// the background thread holds one record while it waits for the reporter
+		assertTrue(log.getDropped() >= 5);
+		latch.countDown();
+		assertTrue(log.flush(1000));
+		log.close();
+		assertEquals("INFO record 0", reporter.messages.get(0));
+	}
+
+	@Test
+	public void testOneThread() throws InterruptedException {
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		Reporter reporter = new ListReporter(new CountDownLatch(0)) {
+			@Override
+			public void log(Level level, String msg) {
+				threads.add(Thread.currentThread());
+			}
+		};
+		AgentLog log = new AgentLog(reporter, Level.INFO);
+		for (int n = 0; n < 5; n++) {
+			log.log(Level.INFO, "record {}", n);
+			assertTrue(log.flush(1000));
+			Thread.sleep(20);
+		}
+		assertEquals(1, threads.size());
+		Thread thread = threads.iterator().next();
+		log.close();
+		thread.join(1000);
+		assertFalse(thread.isAlive());
+	}
+
+	@Test
+	public void testParksWhenIdle() throws InterruptedException {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean.isCurrentThreadCpuTimeSupported());
+		Thread[] drainer = new Thread[1];
+		Reporter reporter = new ListReporter(new CountDownLatch(0)) {
+			@Override
+			public void log(Level level, String msg) {
+				drainer[0] = Thread.currentThread();
+			}
+		};
+		AgentLog log = new AgentLog(reporter, Level.INFO);
+		log.log(Level.INFO, "wake up");
+		assertTrue(log.flush(1000));
+		Thread.sleep(50);
+		long before = bean.getThreadCpuTime(drainer[0].getId());
+		Thread.sleep(500);
+		// polling every 100 microseconds would take several ms of CPU
+		long used = bean.getThreadCpuTime(drainer[0].getId()) - before;
+		assertTrue("Idle thread used " + used + " ns", used < 2_000_000);
+		// and a parked thread is still woken by the next record
+		log.log(Level.INFO, "again");
+		assertTrue(log.flush(100));
+		log.close();
+	}
+
+	@Test
+	public void testClosedLogsDirectly() {
+		ListReporter reporter = new ListReporter(new CountDownLatch(0));
+		AgentLog log = new AgentLog(reporter, Level.INFO);
+		log.close();
+		log.log(Level.INFO, "after {}", "close");
+		assertEquals(Collections.singletonList("INFO after close"), reporter.messages);
+	}
+}
@@ -0,0 +1,106 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Date;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+
+public class AgentMetricsTest {
+
+	@Test
+	public void testSessions() {
+		AgentMetrics metrics = new AgentMetrics();
+		AgentMetrics.Session first = metrics.openSession();
+		AgentMetrics.Session second = metrics.openSession();
+		first.setBidTable(100, 1200);
+		second.setBidTable(50, 0);
+		first.setHistoryLength(3);
+		first.setHistoryLength(5);
+		second.setHistoryLength(2);
+		AgentMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getOpenSessions());
+		assertEquals(150, snapshot.getBidTableSize());
+		assertEquals(1200, snapshot.getBidTableHeapBytes());
+		assertEquals(7, snapshot.getHistoryLength());
+
+		first.close();
+		first.close();
+		first.setHistoryLength(10);
+		snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getSessions());
+		assertEquals(1, snapshot.getOpenSessions());
+		assertEquals(50, snapshot.getBidTableSize());
+		assertEquals(0, snapshot.getBidTableHeapBytes());
+		assertEquals(2, snapshot.getHistoryLength());
+	}
+
+	@Test
+	public void testCounters() {
+		AgentMetrics metrics = new AgentMetrics();
+		metrics.offer();
+		metrics.offer();
+		metrics.accept();
+		metrics.fallback();
+		metrics.record(AgentMetrics.Phase.CREATE_BID, 2_000_000);
+		AgentMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getOffers());
+		assertEquals(1, snapshot.getAccepts());
+		assertEquals(1, snapshot.getFallbacks());
+		assertEquals(1, snapshot.getLatency(AgentMetrics.Phase.CREATE_BID).getCount());
+		assertEquals(2, snapshot.getLatency(AgentMetrics.Phase.CREATE_BID).getMaxMillis(), 0);
+		assertEquals(0, snapshot.getLatency(AgentMetrics.Phase.INIT).getCount());
+	}
+
+	@Test
+	public void testAgentOverJmx() throws Exception {
+		AgentMetrics.Snapshot before = AgentMetrics.getInstance().snapshot();
+		MyAgent agent = new MyAgent();
+		TestConnection connection = new TestConnection();
+		agent.connect(connection);
+		agent.notifyChange(new Settings(new PartyId("party1"),
+				new ProfileRef(new URI("file:src/test/resources/testprofile.json")), new ProtocolRef("SAOP"),
+				new ProgressRounds(30, 0, new Date(System.currentTimeMillis() + 3600000)),
+				new Parameters().with("logLevel", "OFF")));
+		agent.notifyChange(new YourTurn());
+		Action action = connection.getActions().get(0);
+		agent.notifyChange(new ActionDone(action));
+		agent.notifyChange(new ActionDone(new Offer(new PartyId("opponent"), ((Offer) action).getBid())));
+		agent.notifyChange(new YourTurn());
+
+		ObjectName name = new ObjectName(AgentMetrics.OBJECT_NAME);
+		long sessions = (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Sessions");
+		assertTrue(sessions > before.getSessions());
+		assertTrue((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BidTableSize") > 0);
+		CompositeData init = (CompositeData) ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+				"InitLatency");
+		assertTrue((Long) init.get("count") > before.getLatency(AgentMetrics.Phase.INIT).getCount());
+
+		agent.notifyChange(new Finished(new Agreements()));
+		agent.terminate();
+		AgentMetrics.Snapshot after = AgentMetrics.getInstance().snapshot();
+		assertEquals(before.getOpenSessions(), after.getOpenSessions());
+		assertTrue(after.getOffers() + after.getAccepts() >= before.getOffers() + before.getAccepts() + 2);
+		assertTrue(after.getLatency(AgentMetrics.Phase.CREATE_BID).getCount() >= before
+				.getLatency(AgentMetrics.Phase.CREATE_BID).getCount() + 2);
+	}
+}
@@ -0,0 +1,138 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Inform;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+
+/**
+ * Measures the heap allocated by the agent's threads on a turn in the steady
+ * state: the opponent's offer, our turn and our action coming back. Besides the
+ * action it sends, a turn may only allocate a few small objects for the
+ * GeniusWeb API and the worker: the advanced progress, the boxed time and
+ * progress, and the future of the planned turn. The test itself adds the
+ * ActionDone of our action and a list node.
+ */
+public class AllocationTest {
+
+	// Bytes a turn may allocate, a newly decoded Bid alone would take about 300
+	private static final long TURN_BUDGET = 512;
+	private static final int WARMUP_TURNS = 3000;
+	private static final int TURNS = 500;
+	private static final PartyId ME = new PartyId("party1");
+	private static final PartyId OPPONENT = new PartyId("opponent");
+
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private final ProfileGenerator generator = new ProfileGenerator(5, 10, 0.5, 3);
+	private File profileFile;
+	private MyAgent agent;
+	private TestConnection connection;
+	private List<Inform> offers;
+	private final YourTurn yourTurn = new YourTurn();
+
+	@Before
+	public void before() throws Exception {
+		assumeTrue(this.threads.isThreadAllocatedMemorySupported());
+		this.threads.setThreadAllocatedMemoryEnabled(true);
+		this.profileFile = File.createTempFile("allocation", ".json");
+		this.generator.write(0, this.profileFile);
+		// the opponent offers its best bids, which we do not accept
+		CompiledProfile opponent = new CompiledProfile(this.generator.getProfile(1));
+		BidTable table = new BidTable(opponent);
+		this.offers = new ArrayList<>();
+		for (int rank = 0; rank < 64; rank++) {
+			this.offers.add(new ActionDone(new Offer(OPPONENT, table.getBid(rank))));
+		}
+	}
+
+	@After
+	public void after() {
+		if (this.agent != null) {
+			this.agent.notifyChange(new Finished(new Agreements()));
+			this.agent.terminate();
+		}
+		this.profileFile.delete();
+	}
+
+	private void start(geniusweb.progress.Progress progress) {
+		this.agent = new MyAgent();
+		this.connection = new TestConnection();
+		this.agent.connect(this.connection);
+		this.agent.notifyChange(new Settings(ME, new ProfileRef(this.profileFile.toURI()), new ProtocolRef(
+				java.net.URI.create("SAOP")), progress, new Parameters().with("logLevel", "WARNING")));
+	}
+
+	// Plays the turns from the first one
+	private void play(int first, int turns) {
+		for (int turn = first; turn < first + turns; turn++) {
+			this.agent.notifyChange(this.offers.get(turn % this.offers.size()));
+			this.agent.notifyChange(this.yourTurn);
+			Action action = this.connection.getActions().remove(0);
+			this.agent.notifyChange(new ActionDone(action));
+		}
+	}
+
+	// Plays the turns after the warm up, @return the bytes allocated per turn by this thread and the agent's worker
+	private long measure() {
+		play(0, WARMUP_TURNS);
+		long[] ids = { Thread.currentThread().getId(), workerId() };
+		long before = allocated(ids);
+		play(WARMUP_TURNS, TURNS);
+		return (allocated(ids) - before) / TURNS;
+	}
+
+	private long allocated(long[] ids) {
+		long total = 0;
+		for (long bytes : this.threads.getThreadAllocatedBytes(ids)) {
+			total += bytes;
+		}
+		return total;
+	}
+
+	private long workerId() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("MyAgent-" + ME)) {
+				return thread.getId();
+			}
+		}
+		throw new IllegalStateException("No worker thread");
+	}
+
+	@Test
+	public void testRoundsTurn() {
+		start(new ProgressRounds(100000, 0, new Date(System.currentTimeMillis() + 3600000)));
+		long perTurn = measure();
+		assertTrue("A turn allocated " + perTurn + " bytes", perTurn <= TURN_BUDGET);
+	}
+
+	@Test
+	public void testTimeTurn() {
+		start(new ProgressTime(3600000L, new Date()));
+		long perTurn = measure();
+		assertTrue("A turn allocated " + perTurn + " bytes", perTurn <= TURN_BUDGET);
+	}
+}
@@ -0,0 +1,92 @@
+package geniusweb.sampleagent;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import javax.websocket.DeploymentException;
+
+import geniusweb.actions.Accept;
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Inform;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.party.Capabilities;
+import geniusweb.party.DefaultParty;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profileconnection.ProfileConnectionFactory;
+
+/**
+ * A simple opponent for {@link SelfPlaySimulator}: offers random bids with at
+ * least the target utility and accepts offers that reach it. With a high
+ * target it is a hardliner, with a low one a conceder.
+ */
+public class BaselineParty extends DefaultParty {
+
+	// tries to find a random bid above the target before the best bid is offered
+	private static final int TRIES = 100;
+
+	private final double target;
+	private final Random random;
+	private PartyId me;
+	private CompiledProfile profile;
+	private Bid bestBid;
+	private Bid lastReceived;
+
+	public BaselineParty(double target, long seed) {
+		this.target = target;
+		this.random = new Random(seed);
+	}
+
+	@Override
+	public void notifyChange(Inform info) {
+		try {
+			if (info instanceof Settings) {
+				Settings settings = (Settings) info;
+				this.me = settings.getID();
+				this.profile = new CompiledProfile((LinearAdditive) ProfileConnectionFactory
+						.create(settings.getProfile().getURI(), getReporter()).getProfile());
+				this.bestBid = new LazyBidRanking(this.profile).getBid(0);
+			} else if (info instanceof ActionDone) {
+				Action action = ((ActionDone) info).getAction();
+				if (action instanceof Offer && !action.getActor().equals(this.me)) {
+					this.lastReceived = ((Offer) action).getBid();
+				}
+			} else if (info instanceof YourTurn) {
+				getConnection().send(decide());
+			}
+		} catch (IOException | DeploymentException e) {
+			throw new RuntimeException("Failed to handle info", e);
+		}
+	}
+
+	private Action decide() {
+		if (this.lastReceived != null && this.profile.getUtility(this.lastReceived) >= this.target) {
+			return new Accept(this.me, this.lastReceived);
+		}
+		DomainSchema schema = this.profile.getSchema();
+		for (int n = 0; n < TRIES; n++) {
+			long code = (long) (this.random.nextDouble() * schema.size());
+			if (this.profile.getUtility(code) >= this.target) {
+				return new Offer(this.me, schema.decode(code));
+			}
+		}
+		return new Offer(this.me, this.bestBid);
+	}
+
+	@Override
+	public Capabilities getCapabilities() {
+		return new Capabilities(new HashSet<>(Arrays.asList("SAOP")), Collections.singleton(LinearAdditive.class));
+	}
+
+	@Override
+	public String getDescription() {
+		return "Offers random bids with at least utility " + this.target + " and accepts those";
+	}
+}
@@ -0,0 +1,27 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class BidCacheTest {
+
+	private final DomainSchema schema = new DomainSchema(new ProfileGenerator(4, 6, 0, 5).getDomain());
+
+	@Test
+	public void testDecodes() {
+		BidCache cache = new BidCache(schema, 8);
+		for (long code = 0; code < schema.size(); code++) {
+			assertEquals(schema.decode(code), cache.get(code));
+		}
+	}
+
+	@Test
+	public void testReusesBids() {
+		BidCache cache = new BidCache(schema, 8);
+		assertSame(cache.get(42), cache.get(42));
+		cache.get(7);
+		assertSame(cache.get(7), cache.get(7));
+	}
+}
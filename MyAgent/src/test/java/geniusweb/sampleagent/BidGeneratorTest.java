@@ -0,0 +1,102 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+public class BidGeneratorTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private CompiledProfile profile;
+	private BidTable table;
+	private BidGenerator generator;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		profile = new CompiledProfile((LinearAdditive) jackson.readValue(serialized, Profile.class));
+		table = new BidTable(profile);
+		generator = new BidGenerator(profile);
+	}
+
+	@Test
+	public void testDescendingMatchesTable() {
+		BidGenerator.Descending cursor = generator.descending();
+		Set<Long> seen = new HashSet<>();
+		for (int rank = 0; rank < table.size(); rank++) {
+			assertTrue(cursor.next());
+			assertEquals(table.getUtility(rank), cursor.getUtility(), 1e-12);
+			assertEquals(profile.getUtility(cursor.getCode()), cursor.getUtility(), 1e-12);
+			assertTrue(seen.add(cursor.getCode()));
+		}
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void testForEachAtLeast() {
+		for (int rank = 0; rank < table.size(); rank += 7) {
+			double threshold = table.getUtility(rank);
+			Set<Long> found = new HashSet<>();
+			long count = generator.forEachAtLeast(threshold, Long.MAX_VALUE, (code, utility) -> {
+				assertTrue(utility >= threshold);
+				found.add(code);
+			});
+			assertEquals(table.countAtLeast(threshold), count);
+			assertEquals(count, found.size());
+		}
+	}
+
+	@Test
+	public void testLimit() {
+		assertEquals(5, generator.countAtLeast(0, 5));
+	}
+
+	@Test
+	public void testLazyRanking() {
+		LazyBidRanking lazy = new LazyBidRanking(profile);
+		assertEquals(table.getUtility(3), lazy.getUtility(3), 1e-12);
+		assertEquals(4, lazy.getPulled());
+		double threshold = table.getUtility(10);
+		assertEquals(table.countAtLeast(threshold), lazy.countAtLeast(threshold));
+		lazy.getUtility(table.size() - 1);
+		assertEquals(table.countAtLeast(threshold), lazy.countAtLeast(threshold));
+	}
+
+	@Test
+	public void testCountLimit() {
+		double threshold = table.getUtility(20);
+		assertEquals(5, table.countAtLeast(threshold, 5));
+		assertEquals(table.countAtLeast(threshold), table.countAtLeast(threshold, table.size() + 1));
+		LazyBidRanking lazy = new LazyBidRanking(profile);
+		assertEquals(5, lazy.countAtLeast(threshold, 5));
+		assertEquals(0, lazy.getPulled());
+		lazy.getUtility(10);
+		assertEquals(5, lazy.countAtLeast(threshold, 5));
+		assertEquals(table.countAtLeast(threshold), lazy.countAtLeast(threshold, 1000));
+	}
+
+	@Test(timeout = 10000)
+	public void testLargeDomainLimit() {
+		// 10^9 bids, counting them all would take minutes
+		LazyBidRanking lazy = new LazyBidRanking(new CompiledProfile(new ProfileGenerator(9, 10, 0, 1).getProfile(0)));
+		assertEquals(1 << 16, lazy.countAtLeast(0, 1 << 16));
+		assertEquals(0, lazy.getPulled());
+	}
+}
@@ -0,0 +1,75 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BidTableBuilderTest {
+
+	private CompiledProfile profile;
+
+	@Before
+	public void before() {
+		// 5 issues with 10 values each, enough for several leaves
+		profile = new CompiledProfile(new ProfileGenerator(5, 10, 0, 42).getProfile(0));
+	}
+
+	@Test
+	public void testMatchesSequentialTable() {
+		BidTable sequential = new BidTable(profile);
+		BidTable parallel = new BidTableBuilder(profile, new ForkJoinPool(4), Long.MAX_VALUE).build();
+		assertTrue(parallel.isComplete());
+		assertEquals(sequential.size(), parallel.size());
+		Set<Long> codes = new HashSet<>();
+		for (int rank = 0; rank < parallel.size(); rank++) {
+			assertEquals(sequential.getUtility(rank), parallel.getUtility(rank), 0);
+			assertEquals(profile.getUtility(parallel.getCode(rank)), parallel.getUtility(rank), 0);
+			codes.add(parallel.getCode(rank));
+		}
+		assertEquals(parallel.size(), codes.size());
+	}
+
+	@Test
+	public void testOffHeap() {
+		BidTable heap = new BidTableBuilder(profile, new ForkJoinPool(4), Long.MAX_VALUE).build();
+		BidTable offHeap = new BidTableBuilder(profile, new ForkJoinPool(4), Long.MAX_VALUE, true).build();
+		assertTrue(offHeap.isComplete());
+		assertEquals(0, offHeap.getHeapBytes());
+		assertEquals(heap.size() * 12L, heap.getHeapBytes());
+		assertEquals(heap.size(), offHeap.size());
+		for (int rank = 0; rank < heap.size(); rank++) {
+			assertEquals(heap.getCode(rank), offHeap.getCode(rank));
+			assertEquals(heap.getUtility(rank), offHeap.getUtility(rank), 0);
+		}
+		assertEquals(heap.countAtLeast(0.5), offHeap.countAtLeast(0.5));
+	}
+
+	@Test
+	public void testOffHeapBytes() {
+		// the table and the scratch space of the merges, 12 bytes per bid each
+		assertEquals(24000, BidTableBuilder.getOffHeapBytes(1000));
+		assertEquals(24L << 25, BidTableBuilder.getOffHeapBytes(1 << 25));
+		assertTrue(BidTableBuilder.getMaxDirectMemory() > 0);
+	}
+
+	@Test
+	public void testOffHeapDeadlinePassed() {
+		BidTable table = new BidTableBuilder(profile, new ForkJoinPool(4), 0, true).build();
+		assertFalse(table.isComplete());
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void testDeadlinePassed() {
+		BidTable table = new BidTableBuilder(profile, new ForkJoinPool(4), 0).build();
+		assertFalse(table.isComplete());
+		assertEquals(0, table.size());
+	}
+}
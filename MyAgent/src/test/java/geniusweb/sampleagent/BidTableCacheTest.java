@@ -0,0 +1,104 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+
+public class BidTableCacheTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private LinearAdditive linearAdditive;
+	private CompiledProfile profile;
+	private File directory;
+	private BidTableCache cache;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		linearAdditive = (LinearAdditive) jackson.readValue(serialized, Profile.class);
+		profile = new CompiledProfile(linearAdditive);
+		directory = Files.createTempDirectory("bidtables").toFile();
+		cache = new BidTableCache(new File(directory, "cache"));
+	}
+
+	@After
+	public void after() {
+		File[] files = new File(directory, "cache").listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		new File(directory, "cache").delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		assertNull(cache.load(profile));
+		BidTable table = new BidTable(profile);
+		cache.store(profile, table);
+		assertTrue(cache.getFile(profile).exists());
+
+		BidTable loaded = cache.load(new CompiledProfile(linearAdditive));
+		assertTrue(loaded.isComplete());
+		assertEquals(table.size(), loaded.size());
+		for (int rank = 0; rank < table.size(); rank++) {
+			assertEquals(table.getCode(rank), loaded.getCode(rank));
+			assertEquals(table.getUtility(rank), loaded.getUtility(rank), 0);
+		}
+		assertEquals(table.countAtLeast(0.8), loaded.countAtLeast(0.8));
+		assertEquals(table.getBid(3), loaded.getBid(3));
+	}
+
+	@Test
+	public void testOtherProfileMisses() throws IOException {
+		cache.store(profile, new BidTable(profile));
+		Map<String, BigDecimal> weights = new HashMap<>(linearAdditive.getWeights());
+		weights.put("place", new BigDecimal("0.3"));
+		weights.put("budget", new BigDecimal("0.2"));
+		CompiledProfile other = new CompiledProfile(new LinearAdditiveUtilitySpace(linearAdditive.getDomain(),
+				"other", linearAdditive.getUtilities(), weights, null));
+		assertFalse(cache.getFile(profile).equals(cache.getFile(other)));
+		assertNull(cache.load(other));
+	}
+
+	@Test
+	public void testCorruptFileMisses() throws IOException {
+		cache.store(profile, new BidTable(profile));
+		try (RandomAccessFile file = new RandomAccessFile(cache.getFile(profile), "rw")) {
+			file.setLength(file.length() - 8);
+		}
+		assertNull(cache.load(profile));
+	}
+
+	@Test
+	public void testIncompleteNotStored() throws IOException {
+		BidTable partial = new BidTable(profile.getSchema(), new int[0], new double[0], false);
+		cache.store(profile, partial);
+		assertFalse(cache.getFile(profile).exists());
+	}
+}
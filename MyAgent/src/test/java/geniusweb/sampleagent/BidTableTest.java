@@ -0,0 +1,65 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.bidspace.AllBidsList;
+import geniusweb.issuevalue.Bid;
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+public class BidTableTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private LinearAdditive profile;
+	private BidTable table;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		profile = (LinearAdditive) jackson.readValue(serialized, Profile.class);
+		table = new BidTable(new CompiledProfile(profile));
+	}
+
+	@Test
+	public void testContainsAllBids() {
+		assertEquals(new AllBidsList(profile.getDomain()).size().intValue(), table.size());
+	}
+
+	@Test
+	public void testSortedDescending() {
+		for (int rank = 1; rank < table.size(); rank++) {
+			assertTrue(table.getUtility(rank - 1) >= table.getUtility(rank));
+		}
+	}
+
+	@Test
+	public void testUtilityMatchesProfile() {
+		for (int rank = 0; rank < table.size(); rank++) {
+			Bid bid = table.getBid(rank);
+			assertEquals(profile.getUtility(bid).doubleValue(), table.getUtility(rank), 1e-9);
+		}
+	}
+
+	@Test
+	public void testCountAtLeast() {
+		assertEquals(table.size(), table.countAtLeast(0));
+		assertEquals(0, table.countAtLeast(1.1));
+		double threshold = table.getUtility(table.size() / 2);
+		int count = table.countAtLeast(threshold);
+		assertTrue(table.getUtility(count - 1) >= threshold);
+		assertTrue(count == table.size() || table.getUtility(count) < threshold);
+	}
+}
@@ -0,0 +1,119 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.bidspace.AllBidsList;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.Value;
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+public class DomainSchemaTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private LinearAdditive profile;
+	private DomainSchema schema;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		profile = (LinearAdditive) jackson.readValue(serialized, Profile.class);
+		schema = new DomainSchema(profile.getDomain());
+	}
+
+	@Test
+	public void testSize() {
+		assertEquals(new AllBidsList(profile.getDomain()).size().longValue(), schema.size());
+	}
+
+	@Test
+	public void testEncodeDecode() {
+		for (long code = 0; code < schema.size(); code++) {
+			assertEquals(code, schema.encode(schema.decode(code)));
+		}
+	}
+
+	@Test
+	public void testUnknownValue() {
+		Map<String, Value> values = new HashMap<>(schema.decode(0).getIssueValues());
+		values.put("place", new DiscreteValue("Amsterdam"));
+		assertEquals(-1, schema.encode(new Bid(values)));
+	}
+
+	@Test
+	public void testNumberScale() {
+		int budget = schema.getIssueIndex("budget");
+		assertEquals(1, schema.getOrdinal(budget, new NumberValue(new BigDecimal("1200.0"))));
+	}
+
+	@Test
+	public void testNumberGrid() {
+		// 0, 0.5, .. 500 is 1001 values
+		DomainSchema grid = new DomainSchema(
+				new ProfileGenerator(2, 3, 1, BigDecimal.ZERO, new BigDecimal("0.5"), 1001, 0, 1).getDomain(), 5);
+		int number = grid.getIssueIndex("number0");
+		assertNull(schema.getGridRange(schema.getIssueIndex("budget")));
+		assertEquals(0, new BigDecimal("0.5").compareTo(grid.getGridRange(number).getStep()));
+		assertEquals(5 * 3 * 3, grid.size());
+		String[] values = { "0", "125", "250", "375", "500" };
+		for (int v = 0; v < values.length; v++) {
+			assertEquals(v, grid.getOrdinal(number, new NumberValue(new BigDecimal(values[v]))));
+		}
+
+		Map<String, Value> issueValues = new HashMap<>(grid.decode(0).getIssueValues());
+		long code = grid.encode(new Bid(issueValues));
+		issueValues.put("number0", new NumberValue(new BigDecimal("300.5")));
+		assertEquals(-1, grid.encode(new Bid(issueValues)));
+		assertEquals(code + 2 * grid.getStride(number), grid.encodeNearest(new Bid(issueValues)));
+		// as near to 375 as to 500, the lower one
+		issueValues.put("number0", new NumberValue(new BigDecimal("437.5")));
+		assertEquals(code + 3 * grid.getStride(number), grid.encodeNearest(new Bid(issueValues)));
+		issueValues.put("number0", new NumberValue(new BigDecimal("500")));
+		assertEquals(code + 4 * grid.getStride(number), grid.encodeNearest(new Bid(issueValues)));
+		// not a step of the range
+		issueValues.put("number0", new NumberValue(new BigDecimal("300.25")));
+		assertEquals(-1, grid.encodeNearest(new Bid(issueValues)));
+		issueValues.put("number0", new NumberValue(new BigDecimal("501")));
+		assertEquals(-1, grid.encodeNearest(new Bid(issueValues)));
+	}
+
+	@Test
+	public void testLargeRange() {
+		// far too many values to enumerate
+		ProfileGenerator generator = new ProfileGenerator(3, 4, 2, BigDecimal.ZERO, BigDecimal.ONE,
+				Integer.MAX_VALUE, 0, 1);
+		DomainSchema grid = new DomainSchema(generator.getDomain());
+		assertEquals(DomainSchema.MAX_NUMBER_VALUES * DomainSchema.MAX_NUMBER_VALUES * 4 * 4 * 4, grid.size());
+		assertEquals(DomainSchema.getKey(generator.getDomain()), DomainSchema.getKey(generator.getDomain()));
+	}
+
+	@Test
+	public void testCompiledUtility() {
+		CompiledProfile compiled = new CompiledProfile(schema, profile);
+		double[] utilities = new double[(int) schema.size()];
+		compiled.fillUtilities(0, utilities, 0, utilities.length);
+		for (long code = 0; code < schema.size(); code++) {
+			Bid bid = schema.decode(code);
+			assertEquals(profile.getUtility(bid).doubleValue(), compiled.getUtility(code), 1e-9);
+			assertEquals(profile.getUtility(bid).doubleValue(), utilities[(int) code], 1e-9);
+		}
+	}
+}
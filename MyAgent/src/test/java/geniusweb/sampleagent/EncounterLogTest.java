@@ -0,0 +1,122 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+public class EncounterLogTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private DomainSchema schema;
+	private File file;
+	private File other;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		schema = new DomainSchema(((LinearAdditive) jackson.readValue(serialized, Profile.class)).getDomain());
+		file = File.createTempFile("encounters", ".log");
+		other = File.createTempFile("encounters", ".log");
+		file.delete();
+		other.delete();
+	}
+
+	@After
+	public void after() {
+		file.delete();
+		other.delete();
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		try (EncounterLog log = EncounterLog.open(file)) {
+			log.begin("opponent", schema);
+			log.addOffer(3);
+			log.addOffer(191);
+			log.commit(7, 191, 0.5);
+			log.begin("other", schema);
+			log.commit(2, -1, 0);
+		}
+		try (EncounterLog log = EncounterLog.openReadOnly(file)) {
+			assertEquals(2, log.getCount());
+			EncounterLog.Cursor cursor = log.cursor();
+			assertTrue(cursor.next());
+			assertEquals("opponent", cursor.getOpponent());
+			assertEquals("japantrip", cursor.getDomain());
+			assertTrue(cursor.matches(schema));
+			assertEquals(schema.getValueCount(3), cursor.getRadix(3));
+			assertEquals(7, cursor.getRounds());
+			assertTrue(cursor.hasAgreement());
+			assertEquals(191, cursor.getAgreement());
+			assertEquals(0.5, cursor.getUtility(), 0);
+			assertEquals(2, cursor.getOfferCount());
+			assertEquals(3, cursor.getOffer(0));
+			assertEquals(191, cursor.getOffer(1));
+			assertTrue(cursor.next());
+			assertEquals("other", cursor.getOpponent());
+			assertFalse(cursor.hasAgreement());
+			assertEquals(0, cursor.getOfferCount());
+			assertFalse(cursor.next());
+		}
+	}
+
+	@Test
+	public void testUncommittedIsDropped() throws IOException {
+		try (EncounterLog log = EncounterLog.open(file)) {
+			log.begin("opponent", schema);
+			log.addOffer(3);
+			log.commit(1, -1, 0);
+			log.begin("crashed", schema);
+			log.addOffer(4);
+		}
+		try (EncounterLog log = EncounterLog.open(file)) {
+			assertEquals(1, log.getCount());
+			log.begin("next", schema);
+			log.commit(1, -1, 0);
+			EncounterLog.Cursor cursor = log.cursor();
+			cursor.next();
+			cursor.next();
+			assertEquals("next", cursor.getOpponent());
+		}
+	}
+
+	@Test
+	public void testGrow() throws IOException {
+		try (EncounterLog log = EncounterLog.open(file)) {
+			for (int n = 0; n < 100; n++) {
+				log.begin("opponent" + n, schema);
+				for (int m = 0; m < 1000; m++) {
+					log.addOffer(m % schema.size());
+				}
+				log.commit(1000, -1, 0);
+			}
+		}
+		try (EncounterLog log = EncounterLog.openReadOnly(file)) {
+			EncounterLog.Cursor cursor = log.cursor();
+			int n = 0;
+			while (cursor.next()) {
+				assertEquals("opponent" + n, cursor.getOpponent());
+				assertEquals(999 % schema.size(), cursor.getOffer(999));
+				n++;
+			}
+			assertEquals(100, n);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		// small values are exact, larger ones are within 1 / SUB_BUCKETS of the bucket start
+		for (long value = 0; value < 1L << 40; value = value * 3 / 2 + 1) {
+			int index = LatencyHistogram.index(value);
+			long lowest = LatencyHistogram.lowestValue(index);
+			assertTrue(lowest <= value);
+			assertTrue(value - lowest <= lowest / LatencyHistogram.SUB_BUCKETS);
+			assertEquals(index, LatencyHistogram.index(lowest));
+		}
+		for (int index = 1; index < 2000 && LatencyHistogram.lowestValue(index) < 1L << 40; index++) {
+			assertTrue(LatencyHistogram.lowestValue(index) > LatencyHistogram.lowestValue(index - 1));
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int ms = 1; ms <= 100; ms++) {
+			histogram.record(ms * 1_000_000L);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.getCount());
+		assertEquals(50.5, snapshot.getMeanMillis(), 1e-9);
+		assertEquals(100, snapshot.getMaxMillis(), 1e-9);
+		assertEquals(50, snapshot.getP50Millis(), 50 * 0.04);
+		assertEquals(90, snapshot.getP90Millis(), 90 * 0.04);
+		assertEquals(99, snapshot.getP99Millis(), 99 * 0.04);
+		assertEquals(100, snapshot.getPercentileMillis(100), 100 * 0.04);
+		assertEquals(0, new LatencyHistogram().snapshot().getP99Millis(), 0);
+	}
+
+	@Test
+	public void testThreads() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int n = 0; n < 100000; n++) {
+					histogram.record(n);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(400000, histogram.snapshot().getCount());
+		assertEquals(99999 / 1e6, histogram.snapshot().getMaxMillis(), 0);
+	}
+}
@@ -0,0 +1,204 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.ValueSet;
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import tudelft.utilities.logging.Reporter;
+
+public class LearnerTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private DomainSchema schema;
+	private File logFile;
+	private File sessionFile;
+	private File priorsFile;
+	private File sessionsFile;
+	private int place;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		schema = new DomainSchema(((LinearAdditive) jackson.readValue(serialized, Profile.class)).getDomain());
+		logFile = File.createTempFile("encounters", ".log");
+		sessionFile = File.createTempFile("session", ".log");
+		priorsFile = new File(logFile.getPath() + ".priors");
+		sessionsFile = new File(logFile.getPath() + ".sessions");
+		logFile.delete();
+		sessionFile.delete();
+		place = schema.getIssueIndex("place");
+	}
+
+	@After
+	public void after() {
+		logFile.delete();
+		sessionFile.delete();
+		priorsFile.delete();
+		sessionsFile.delete();
+	}
+
+	@Test
+	public void testAppendEncounters() throws IOException {
+		try (EncounterLog session = EncounterLog.open(sessionFile)) {
+			session.begin("opponent", schema);
+			session.addOffer(5);
+			session.commit(3, 5, 0.25);
+		}
+		try (EncounterLog log = EncounterLog.open(logFile)) {
+			Learner learner = new Learner(mock(Reporter.class));
+			assertEquals(1, learner.appendEncounters(log,
+					Arrays.asList(sessionFile, new File(sessionFile + ".missing")), sessionsFile));
+			EncounterLog.Cursor cursor = log.cursor();
+			assertTrue(cursor.next());
+			assertEquals("opponent", cursor.getOpponent());
+			assertEquals(5, cursor.getOffer(0));
+			assertEquals(0.25, cursor.getUtility(), 0);
+			assertFalse(cursor.next());
+		}
+	}
+
+	@Test
+	public void testAppendOnce() throws IOException {
+		try (EncounterLog session = EncounterLog.open(sessionFile)) {
+			session.begin("opponent", schema);
+			session.commit(3, -1, 0);
+		}
+		try (EncounterLog log = EncounterLog.open(logFile)) {
+			assertEquals(1, new Learner(mock(Reporter.class)).appendEncounters(log, Arrays.asList(sessionFile),
+					sessionsFile));
+			// a later Learn run gets the same session log
+			assertEquals(0, new Learner(mock(Reporter.class)).appendEncounters(log, Arrays.asList(sessionFile),
+					sessionsFile));
+			assertEquals(1, log.getCount());
+		}
+		// only the encounter added to the session log since is new
+		try (EncounterLog session = EncounterLog.open(sessionFile)) {
+			session.begin("other", schema);
+			session.commit(4, -1, 0);
+		}
+		try (EncounterLog log = EncounterLog.open(logFile)) {
+			assertEquals(1, new Learner(mock(Reporter.class)).appendEncounters(log, Arrays.asList(sessionFile),
+					sessionsFile));
+			EncounterLog.Cursor cursor = log.cursor();
+			assertTrue(cursor.next());
+			assertEquals("opponent", cursor.getOpponent());
+			assertTrue(cursor.next());
+			assertEquals("other", cursor.getOpponent());
+			assertFalse(cursor.next());
+		}
+	}
+
+	@Test
+	public void testKeyName() {
+		assertEquals("Agent", OpponentPrior.getKeyName("Agent_12"));
+		assertEquals("party", OpponentPrior.getKeyName("party1"));
+		assertEquals("42", OpponentPrior.getKeyName("42"));
+		assertEquals("Agent@japantrip", OpponentPrior.getKey("Agent_3", "japantrip"));
+	}
+
+	@Test
+	public void testIncremental() throws IOException {
+		try (EncounterLog log = EncounterLog.open(logFile)) {
+			addEncounter(log, "Stubborn_1");
+			addEncounter(log, "Other_1");
+			Learner learner = new Learner(mock(Reporter.class), new ForkJoinPool(2));
+			assertEquals(2, learner.processEncounter(log, priorsFile));
+			assertEquals(1, learner.getPrior("Stubborn_7", "japantrip").getEncounters());
+
+			addEncounter(log, "Stubborn_2");
+			// a new learner only processes the new encounter, and keeps the old priors
+			learner = new Learner(mock(Reporter.class), new ForkJoinPool(2));
+			assertEquals(1, learner.processEncounter(log, priorsFile));
+			OpponentPrior prior = learner.getPrior("Stubborn", "japantrip");
+			assertEquals(2, prior.getEncounters());
+			assertEquals(1, learner.getPrior("Other", "japantrip").getEncounters());
+			assertNull(learner.getPrior("Stubborn", "elsewhere"));
+			assertTrue(prior.matches(schema));
+
+			// the opponent never changed the place
+			for (int i = 0; i < schema.getIssueCount(); i++) {
+				if (i != place) {
+					assertTrue(prior.getWeight(i) < prior.getWeight(place));
+				}
+			}
+			assertEquals(1.0, prior.getValueFrequency(place, 0), 0);
+			assertEquals(20, prior.getValueCount(place, 0));
+			assertTrue(prior.getConcession(0) >= prior.getConcession(OpponentPrior.CURVE_POINTS - 1));
+
+			assertEquals(0, new Learner(mock(Reporter.class)).processEncounter(log, priorsFile));
+		}
+	}
+
+	@Test
+	public void testDomainChanged() throws IOException {
+		// the domain keeps its name but has fewer places and only the days next to them
+		Map<String, ValueSet> issues = new HashMap<>();
+		issues.put("place", new DiscreteValueSet(Arrays.asList(new DiscreteValue("Tokyo"), new DiscreteValue("Osaka"))));
+		issues.put("days", new DiscreteValueSet(Arrays.asList(new DiscreteValue("3"), new DiscreteValue("4"))));
+		DomainSchema changed = new DomainSchema(new Domain("japantrip", issues));
+		try (EncounterLog log = EncounterLog.open(logFile)) {
+			addEncounter(log, "Stubborn_1");
+			addEncounter(log, "Stubborn_2", changed);
+			addEncounter(log, "Stubborn_3", changed);
+			Learner learner = new Learner(mock(Reporter.class), new ForkJoinPool(2));
+			assertEquals(3, learner.processEncounter(log, priorsFile));
+			// in one batch, the newest domain wins
+			OpponentPrior prior = learner.getPrior("Stubborn", "japantrip");
+			assertTrue(prior.matches(changed));
+			assertFalse(prior.matches(schema));
+			assertEquals(2, prior.getEncounters());
+
+			// and in the next one it replaces the prior of the old domain
+			addEncounter(log, "Stubborn_4");
+			assertEquals(1, learner.processEncounter(log, priorsFile));
+			prior = learner.getPrior("Stubborn", "japantrip");
+			assertTrue(prior.matches(schema));
+			assertEquals(1, prior.getEncounters());
+		}
+	}
+
+	private void addEncounter(EncounterLog log, String opponent) throws IOException {
+		addEncounter(log, opponent, schema);
+	}
+
+	// An encounter of 10 offers with the first place, and the other issues changing
+	private void addEncounter(EncounterLog log, String opponent, DomainSchema schema) throws IOException {
+		int place = schema.getIssueIndex("place");
+		log.begin(opponent, schema);
+		for (int n = 0; n < 10; n++) {
+			long code = 0;
+			for (int i = 0; i < schema.getIssueCount(); i++) {
+				int ordinal = i == place ? 0 : n % schema.getValueCount(i);
+				code += ordinal * schema.getStride(i);
+			}
+			log.addOffer(code);
+		}
+		log.commit(10, -1, 0);
+	}
+}
@@ -3,7 +3,9 @@ package geniusweb.sampleagent;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -19,10 +21,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
 import org.junit.Before;
@@ -36,10 +43,10 @@ import geniusweb.actions.Accept;
 import geniusweb.actions.Action;
 import geniusweb.actions.EndNegotiation;
 import geniusweb.actions.FileLocation;
+import geniusweb.actions.LearningDone;
 import geniusweb.actions.Offer;
 import geniusweb.actions.PartyId;
 import geniusweb.bidspace.AllBidsList;
-import geniusweb.connection.ConnectionEnd;
 import geniusweb.inform.ActionDone;
 import geniusweb.inform.Agreements;
 import geniusweb.inform.Finished;
@@ -47,16 +54,21 @@ import geniusweb.inform.Inform;
 import geniusweb.inform.Settings;
 import geniusweb.inform.YourTurn;
 import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.Value;
 import geniusweb.party.Capabilities;
 import geniusweb.party.DefaultParty;
 import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.DiscreteValueSetUtilities;
 import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+import geniusweb.progress.ProgressRounds;
 import geniusweb.progress.ProgressTime;
 import geniusweb.references.Parameters;
 import geniusweb.references.ProfileRef;
 import geniusweb.references.ProtocolRef;
-import geniusweb.references.Reference;
-import tudelft.utilities.listener.DefaultListenable;
 import tudelft.utilities.logging.Reporter;
 
 public class MyAgentTest {
@@ -103,6 +115,8 @@ public class MyAgentTest {
 			tmpDirectory.toFile().mkdir();
 		if (persistentPath.exists())
 			persistentPath.delete();
+		new File(persistentPath.getPath() + ".priors").delete();
+		new File(persistentPath.getPath() + ".sessions").delete();
 		if (dataPath.exists())
 			dataPath.delete();
 	}
@@ -136,6 +150,48 @@ public class MyAgentTest {
 		assertEquals(0, connection.getActions().size());
 	}
 
+	@Test
+	public void testParametersTraced() throws URISyntaxException, IOException {
+		// the parameters a session reads, with all options on
+		Set<String> read = new HashSet<>();
+		Map<String, Object> values = new HashMap<>();
+		values.put("persistentstate", parameters.get("persistentstate"));
+		values.put("negotiationdata", parameters.get("negotiationdata"));
+		values.put("nearestOffers", true);
+		values.put("logLevel", "OFF");
+		File traceFile = File.createTempFile("parameters", ".trace");
+		values.put("traceFile", traceFile.getPath());
+		Parameters recording = new Parameters(values) {
+			@Override
+			public Object get(String key) {
+				read.add(key);
+				return super.get(key);
+			}
+		};
+		ProgressRounds rounds = new ProgressRounds(50, 0, new Date(System.currentTimeMillis() + 60000));
+		try {
+			party.connect(connection);
+			party.notifyChange(new Settings(PARTY1, new ProfileRef(new URI("file:" + PROFILE)), new ProtocolRef(SAOP),
+					rounds, recording));
+			party.notifyChange(new ActionDone(new Offer(otherparty, findBadBid())));
+			party.notifyChange(new YourTurn());
+			party.notifyChange(new Finished(new Agreements()));
+			party.terminate();
+			MyAgent learner = new MyAgent();
+			learner.connect(new TestConnection());
+			learner.notifyChange(new Settings(PARTY1, new ProfileRef(new URI("file:" + PROFILE)),
+					new ProtocolRef(LEARN), rounds, recording));
+			learner.terminate();
+		} finally {
+			traceFile.delete();
+		}
+		assertTrue(read.contains("traceFile"));
+		// a trace records only the parameters in the list, a replay would miss the others
+		for (String key : read) {
+			assertTrue("Parameter " + key + " is not traced", Arrays.asList(MyAgent.PARAMETERS).contains(key));
+		}
+	}
+
 	@Test
 	public void testInformEmptyParameters() {
 		party.connect(connection);
@@ -162,6 +218,18 @@ public class MyAgentTest {
 		assertEquals(0, connection.getActions().size());
 	}
 
+	@Test
+	public void testOwnOfferIgnored() {
+		party.connect(connection);
+		party.notifyChange(settingsSAOP);
+		party.notifyChange(new ActionDone(new Offer(PARTY1, findGoodBid())));
+		party.notifyChange(new YourTurn());
+
+		// our own offer must not be accepted
+		assertEquals(1, connection.getActions().size());
+		assertTrue(connection.getActions().get(0) instanceof Offer);
+	}
+
 	@Test
 	public void testOtherWalksAway() {
 		party.connect(connection);
@@ -237,15 +305,274 @@ public class MyAgentTest {
 		party.notifyChange(new Finished(agreements));
 	}
 
+	@Test
+	public void testManyRounds() throws URISyntaxException {
+		ProgressRounds rounds = new ProgressRounds(50, 0, new Date(System.currentTimeMillis() + 60000));
+		Settings settings = new Settings(PARTY1, new ProfileRef(new URI("file:" + PROFILE)), new ProtocolRef(SAOP),
+				rounds, parameters);
+		party.connect(connection);
+		party.notifyChange(settings);
+		Bid bidOpponent = findBadBid();
+		for (int round = 0; round < 20; round++) {
+			party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+			party.notifyChange(new YourTurn());
+		}
+		assertEquals(20, connection.getActions().size());
+		for (Action action : connection.getActions()) {
+			assertTrue(action instanceof Offer);
+		}
+	}
+
+	@Test
+	public void testEncounterLogFails() throws IOException {
+		// a name too long for the log, so it fails at the first offer
+		char[] name = new char[40000];
+		Arrays.fill(name, 'a');
+		PartyId opponent = new PartyId(new String(name));
+		party.connect(connection);
+		party.notifyChange(settingsSAOP);
+		party.notifyChange(new ActionDone(new Offer(opponent, findBadBid())));
+		party.notifyChange(new YourTurn());
+		party.notifyChange(new ActionDone(new Offer(opponent, findBadBid())));
+		party.notifyChange(new YourTurn());
+		assertEquals(2, connection.getActions().size());
+		assertTrue(connection.getActions().get(1) instanceof Offer);
+		party.notifyChange(new Finished(new Agreements()));
+		party.terminate();
+		File dataPath = new FileLocation(
+				UUID.fromString(((List<String>) this.parameters.get("negotiationdata")).get(0))).getFile();
+		try (EncounterLog log = EncounterLog.openReadOnly(dataPath)) {
+			assertEquals(0, log.getCount());
+		}
+	}
+
+	@Test
+	public void testTurnTimeout() throws InterruptedException, URISyntaxException {
+		AtomicLong delay = new AtomicLong();
+		party = slowAgent(delay, new AtomicReference<>());
+		party.connect(connection);
+		// with rounds the plans after the first offer are not for our best bid
+		ProgressRounds rounds = new ProgressRounds(50, 0, new Date(System.currentTimeMillis() + 60000));
+		party.notifyChange(new Settings(PARTY1, new ProfileRef(new URI("file:" + PROFILE)), new ProtocolRef(SAOP),
+				rounds, parameters));
+		Bid bidOpponent = findBadBid();
+		long fallbacks = AgentMetrics.getInstance().snapshot().getFallbacks();
+
+		// nothing offered yet, so a late turn offers our best bid
+		delay.set(500);
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		BigDecimal best = BigDecimal.ZERO;
+		for (Bid bid : new AllBidsList(profile.getDomain())) {
+			best = best.max(profile.getUtility(bid));
+		}
+		Bid sent = ((Offer) connection.getActions().get(0)).getBid();
+		assertEquals(0, best.compareTo(profile.getUtility(sent)));
+		Thread.sleep(500); // the late plan finishes anyway
+
+		// its bid was never sent, so the next late turn offers the best bid again
+		delay.set(500);
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		assertEquals(sent, ((Offer) connection.getActions().get(1)).getBid());
+		Thread.sleep(500);
+
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		Bid offered = ((Offer) connection.getActions().get(2)).getBid();
+		// and after a turn in time, the bid we offered last
+		delay.set(500);
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		assertEquals(offered, ((Offer) connection.getActions().get(3)).getBid());
+		assertEquals(fallbacks + 3, AgentMetrics.getInstance().snapshot().getFallbacks());
+	}
+
+	@Test
+	public void testPlanStillRunning() {
+		AtomicLong delay = new AtomicLong(250);
+		party = slowAgent(delay, new AtomicReference<>());
+		party.connect(connection);
+		party.notifyChange(settingsSAOP);
+		Bid bidOpponent = findBadBid();
+		long fallbacks = AgentMetrics.getInstance().snapshot().getFallbacks();
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		// the next offer comes in while the late plan still runs, its plan waits for it and is in time
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		assertEquals(2, connection.getActions().size());
+		assertTrue(connection.getActions().get(1) instanceof Offer);
+		assertEquals(fallbacks + 1, AgentMetrics.getInstance().snapshot().getFallbacks());
+	}
+
+	@Test
+	public void testPlanFails() {
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		party = slowAgent(new AtomicLong(), failure);
+		party.connect(connection);
+		party.notifyChange(settingsSAOP);
+		Bid bidOpponent = findBadBid();
+		RuntimeException cause = new IllegalArgumentException("plan fails");
+		failure.set(cause);
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		try {
+			party.notifyChange(new YourTurn());
+			fail("The failed plan was not reported");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+			assertSame(cause, e.getCause().getCause());
+		}
+		assertEquals(0, connection.getActions().size());
+		// the worker goes on with the next turn
+		party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+		party.notifyChange(new YourTurn());
+		assertTrue(connection.getActions().get(0) instanceof Offer);
+	}
+
+	/*
+	 * An agent whose plans read the time from a clock that makes the next plan
+	 * sleep for the delay in ms, or throw the failure. Both are taken once.
+	 */
+	private static MyAgent slowAgent(AtomicLong delay, AtomicReference<RuntimeException> failure) {
+		return new MyAgent(mock(Reporter.class), () -> {
+			if (Thread.currentThread().getName().startsWith("MyAgent-")) {
+				RuntimeException thrown = failure.getAndSet(null);
+				if (thrown != null) {
+					throw thrown;
+				}
+				try {
+					Thread.sleep(delay.getAndSet(0));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return System.currentTimeMillis();
+		});
+	}
+
+	@Test
+	public void testLargeDomainTurns() throws IOException, URISyntaxException {
+		// 10^9 bids, too many for a table even off heap, so the bids are ranked lazily
+		ProfileGenerator generator = new ProfileGenerator(9, 10, 0.5, 11);
+		// almost every bid is above the acceptable utility, far more than the Pareto cap
+		LinearAdditive generated = generator.getProfile(0);
+		Map<String, ValueSetUtilities> utilities = new HashMap<>();
+		for (Map.Entry<String, ValueSetUtilities> issue : generated.getUtilities().entrySet()) {
+			Map<DiscreteValue, BigDecimal> values = new HashMap<>();
+			for (Map.Entry<DiscreteValue, BigDecimal> value : ((DiscreteValueSetUtilities) issue.getValue())
+					.getUtilities().entrySet()) {
+				values.put(value.getKey(), new BigDecimal("0.75").add(value.getValue().divide(new BigDecimal(4))));
+			}
+			utilities.put(issue.getKey(), new DiscreteValueSetUtilities(values));
+		}
+		LinearAdditive generous = new LinearAdditiveUtilitySpace(generated.getDomain(), "generous", utilities,
+				generated.getWeights(), null);
+		File file = File.createTempFile("large", ".json");
+		try {
+			Files.write(file.toPath(), ProfileGenerator.toJson(generous).getBytes(StandardCharsets.UTF_8));
+			ProgressRounds rounds = new ProgressRounds(50, 0, new Date(System.currentTimeMillis() + 600000));
+			party.connect(connection);
+			party.notifyChange(new Settings(PARTY1, new ProfileRef(file.toURI()), new ProtocolRef(SAOP), rounds,
+					new Parameters().with("logLevel", "OFF")));
+			Bid bidOpponent = new LazyBidRanking(new CompiledProfile(generator.getProfile(1))).getBid(0);
+			long fallbacks = 0;
+			for (int round = 0; round < 20; round++) {
+				if (round == 10) {
+					// the first frontier pulls the candidates from the lazy ranking once, it may miss its turn
+					fallbacks = AgentMetrics.getInstance().snapshot().getFallbacks();
+				}
+				party.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+				party.notifyChange(new YourTurn());
+			}
+			assertEquals(20, connection.getActions().size());
+			// counting the candidates stops at the Pareto cap, walking all good bids would miss the turns
+			assertEquals(fallbacks, AgentMetrics.getInstance().snapshot().getFallbacks());
+			party.notifyChange(new Finished(new Agreements()));
+			party.terminate();
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testNearestOffers() throws IOException, URISyntaxException {
+		// a second agent without the option offers the Nash bids, the two play the same until the option kicks in
+		ProfileGenerator generator = new ProfileGenerator(5, 10, 0.5, 3);
+		File file = File.createTempFile("nearest", ".json");
+		MyAgent nash = new MyAgent();
+		try {
+			generator.write(0, file);
+			ProgressRounds rounds = new ProgressRounds(50, 0, new Date(System.currentTimeMillis() + 60000));
+			TestConnection nashConnection = new TestConnection();
+			party.connect(connection);
+			nash.connect(nashConnection);
+			party.notifyChange(new Settings(PARTY1, new ProfileRef(file.toURI()), new ProtocolRef(SAOP), rounds,
+					new Parameters().with("nearestOffers", true)));
+			nash.notifyChange(new Settings(PARTY1, new ProfileRef(file.toURI()), new ProtocolRef(SAOP), rounds,
+					new Parameters()));
+			// the opponent keeps offering its best few bids, each of them is the offer to come near
+			BidRanking opponent = new LazyBidRanking(new CompiledProfile(generator.getProfile(1)));
+			Bid bidOpponent = null;
+			Bid nearest = null, nashBid = null;
+			int turn = 0;
+			while (turn < 40 && nearest == null) {
+				bidOpponent = opponent.getBid(turn % 4);
+				for (DefaultParty agent : new DefaultParty[] { party, nash }) {
+					agent.notifyChange(new ActionDone(new Offer(otherparty, bidOpponent)));
+					agent.notifyChange(new YourTurn());
+				}
+				Bid bid = ((Offer) connection.getActions().get(turn)).getBid();
+				Bid other = ((Offer) nashConnection.getActions().get(turn)).getBid();
+				if (!bid.equals(other)) {
+					nearest = bid;
+					nashBid = other;
+				}
+				turn++;
+			}
+			assertNotNull("The offers never moved towards the opponent", nearest);
+			assertTrue(turn > 7); // the first rounds step through our best bids
+			// at the first turn they differ, our Nash bid is what the option started from
+			assertTrue(matches(nearest, bidOpponent) >= matches(nashBid, bidOpponent));
+			LinearAdditive ours = generator.getProfile(0);
+			assertTrue(ours.getUtility(nearest).compareTo(ours.getUtility(nashBid)) >= 0);
+		} finally {
+			nash.terminate();
+			file.delete();
+		}
+	}
+
+	// Number of issues with the same value in both bids
+	private static int matches(Bid bid, Bid other) {
+		int matches = 0;
+		for (String issue : bid.getIssues()) {
+			if (bid.getValue(issue).equals(other.getValue(issue))) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
 	@Test
 	public void testMockTournament() throws JsonParseException, JsonMappingException, IOException, URISyntaxException {
 		testMockNegotiation();
 		party.terminate();
+		File dataPath = new FileLocation(
+				UUID.fromString(((List<String>) this.parameters.get("negotiationdata")).get(0))).getFile();
+		try (EncounterLog log = EncounterLog.openReadOnly(dataPath)) {
+			assertEquals(1, log.getCount());
+		}
 
-		before();
+		party = new MyAgent();
 		party.connect(connection);
 		party.notifyChange(settingsLearn);
+		assertTrue(connection.getActions().get(connection.getActions().size() - 1) instanceof LearningDone);
 		party.terminate();
+		File persistentPath = new FileLocation(UUID.fromString((String) this.parameters.get("persistentstate")))
+				.getFile();
+		try (EncounterLog log = EncounterLog.openReadOnly(persistentPath)) {
+			assertEquals(1, log.getCount());
+		}
 
 		before();
 		testMockNegotiation();
@@ -260,44 +587,13 @@ public class MyAgentTest {
 		}
 		throw new IllegalStateException("Test can not be done: there is no bad bid with utility<0.2");
 	}
-}
-
-/**
- * A "real" connection object, because the party is going to subscribe etc, and
- * without a real connection we would have to do a lot of mocks that would make
- * the test very hard to read.
- *
- */
-class TestConnection extends DefaultListenable<Inform> implements ConnectionEnd<Inform, Action> {
-	private List<Action> actions = new LinkedList<>();
-
-	@Override
-	public void send(Action action) throws IOException {
-		actions.add(action);
-	}
 
-	@Override
-	public Reference getReference() {
-		return null;
-	}
-
-	@Override
-	public URI getRemoteURI() {
-		return null;
-	}
-
-	@Override
-	public void close() {
-
-	}
-
-	@Override
-	public Error getError() {
-		return null;
-	}
-
-	public List<Action> getActions() {
-		return actions;
+	private Bid findGoodBid() {
+		for (Bid bid : new AllBidsList(profile.getDomain())) {
+			if (profile.getUtility(bid).compareTo(BigDecimal.valueOf(0.9)) > 0) {
+				return bid;
+			}
+		}
+		throw new IllegalStateException("Test can not be done: there is no good bid with utility>0.9");
 	}
-
 }
@@ -0,0 +1,150 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.Range;
+import geniusweb.issuevalue.Value;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+
+public class NumberRefinerTest {
+
+	// 0, 0.5, .. 500
+	private final ProfileGenerator generator = new ProfileGenerator(2, 3, 2, BigDecimal.ZERO,
+			new BigDecimal("0.5"), 1001, 0.5, 7);
+	private final LinearAdditive profile = generator.getProfile(0);
+	private final CompiledProfile compiled = new CompiledProfile(profile);
+	private final DomainSchema schema = compiled.getSchema();
+	private final NumberRefiner refiner = new NumberRefiner(compiled);
+
+	@Test
+	public void testDiscrete() {
+		CompiledProfile discrete = new CompiledProfile(new ProfileGenerator(3, 4, 0, 1).getProfile(0));
+		NumberRefiner refiner = new NumberRefiner(discrete);
+		assertFalse(refiner.isRefining());
+		Bid bid = discrete.getSchema().decode(5);
+		assertSame(bid, refiner.refine(5, bid, 0, null));
+	}
+
+	@Test
+	public void testBestNumbers() {
+		assertTrue(refiner.isRefining());
+		for (long code = 0; code < schema.size(); code++) {
+			Bid refined = refiner.refine(code, schema.decode(code), compiled.getUtility(code), null);
+			// every number is at its best, which is one of the ends of the range
+			for (String issue : new String[] { "number0", "number1" }) {
+				BigDecimal best = best(issue);
+				assertEquals(0, best.compareTo(((NumberValue) refined.getValue(issue)).getValue()));
+			}
+			assertTrue(profile.getUtility(refined).doubleValue() >= compiled.getUtility(code) - 1e-6);
+		}
+	}
+
+	@Test
+	public void testTowardsOpponent() {
+		Random random = new Random(3);
+		int number = schema.getIssueIndex("number0");
+		Range range = schema.getGridRange(number);
+		for (int n = 0; n < 200; n++) {
+			long code = random.nextInt((int) schema.size());
+			Bid bid = schema.decode(code);
+			// the opponent differs from the bid in the first number only
+			Map<String, Value> values = new HashMap<>(bid.getIssueValues());
+			long target = random.nextInt(1001);
+			values.put("number0", new NumberValue(range.get(BigInteger.valueOf(target))));
+			Bid opponent = new Bid(values);
+			double threshold = compiled.getUtility(code) - random.nextDouble() * 0.1;
+			Bid refined = refiner.refine(code, bid, threshold, opponent);
+			assertTrue(profile.getUtility(refined).doubleValue() >= threshold - 1e-6);
+
+			// no step that is good enough is nearer to the opponent's
+			long step = step(range, refined.getValue("number0"));
+			for (long other = 0; other < 1001; other++) {
+				values.put("number0", new NumberValue(range.get(BigInteger.valueOf(other))));
+				if (Math.abs(other - target) < Math.abs(step - target)) {
+					assertTrue(profile.getUtility(new Bid(values)).doubleValue() < threshold + 1e-6);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAgent() throws Exception {
+		File file = File.createTempFile("numbers", ".json");
+		try {
+			generator.write(0, file);
+			MyAgent agent = new MyAgent();
+			TestConnection connection = new TestConnection();
+			agent.connect(connection);
+			agent.notifyChange(new Settings(new PartyId("party1"), new ProfileRef(file.toURI()),
+					new ProtocolRef("SAOP"), new ProgressRounds(30, 0, new Date(System.currentTimeMillis() + 60000)),
+					new Parameters().with("logLevel", "OFF")));
+			// the opponent offers what it likes best
+			Bid opponent = new BidTable(new CompiledProfile(generator.getProfile(1))).getBid(0);
+			for (int round = 0; round < 20; round++) {
+				agent.notifyChange(new ActionDone(new Offer(new PartyId("opponent"), opponent)));
+				agent.notifyChange(new YourTurn());
+			}
+			assertEquals(20, connection.getActions().size());
+			for (Action action : connection.getActions()) {
+				if (action instanceof Offer) {
+					Bid bid = ((Offer) action).getBid();
+					// valid steps of the range, also between the grid values
+					for (String issue : new String[] { "number0", "number1" }) {
+						assertTrue(profile.getDomain().getValues(issue).contains(bid.getValue(issue)));
+					}
+				}
+			}
+			agent.notifyChange(new Finished(new Agreements()));
+			agent.terminate();
+		} finally {
+			file.delete();
+		}
+	}
+
+	// The value of the issue with the highest utility, brute force
+	private BigDecimal best(String issue) {
+		Range range = schema.getGridRange(schema.getIssueIndex(issue));
+		BigDecimal best = null;
+		BigDecimal bestUtility = null;
+		for (long step = 0; step < 1001; step++) {
+			BigDecimal value = range.get(BigInteger.valueOf(step));
+			BigDecimal utility = profile.getUtilities().get(issue).getUtility(new NumberValue(value));
+			if (bestUtility == null || utility.compareTo(bestUtility) > 0) {
+				best = value;
+				bestUtility = utility;
+			}
+		}
+		return best;
+	}
+
+	private static long step(Range range, Value value) {
+		return ((NumberValue) value).getValue().subtract(range.getLow()).divide(range.getStep()).longValueExact();
+	}
+}
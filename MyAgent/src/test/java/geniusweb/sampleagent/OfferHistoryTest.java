@@ -0,0 +1,51 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OfferHistoryTest {
+
+	@Test
+	public void testRing() {
+		OfferHistory history = new OfferHistory(4, 1);
+		for (int n = 0; n < 10; n++) {
+			history.add(n, n / 10.0);
+		}
+		assertEquals(4, history.size());
+		assertEquals(10, history.getTotal());
+		assertEquals(9, history.getCode(0));
+		assertEquals(6, history.getCode(3));
+		assertEquals(0.6, history.getUtility(3), 1e-12);
+		assertEquals(0.45, history.getAverageUtility(), 1e-12);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testTooOld() {
+		OfferHistory history = new OfferHistory(4, 1);
+		history.add(0, 0);
+		history.getCode(1);
+	}
+
+	@Test
+	public void testDecay() {
+		OfferHistory history = new OfferHistory(2, 0.5);
+		history.add(0, 0);
+		history.add(1, 1);
+		// weights 0.5 and 1
+		assertEquals(1 / 1.5, history.getAverageUtility(), 1e-12);
+		history.add(2, 0);
+		// weights 0.25, 0.5 and 1, the first offer still counts though it is no longer kept
+		assertEquals(0.5 / 1.75, history.getAverageUtility(), 1e-12);
+	}
+
+	@Test
+	public void testLongSession() {
+		OfferHistory history = new OfferHistory(8, 0.5);
+		for (int n = 0; n < 10000; n++) {
+			history.add(n % 2, n % 2);
+		}
+		// weights ... 0.25, 0.5, 1 alternating between the utilities
+		assertEquals(2.0 / 3, history.getAverageUtility(), 1e-9);
+	}
+}
@@ -0,0 +1,134 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+public class OpponentModelTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private DomainSchema schema;
+	private OpponentModel model;
+	private int place;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		schema = new DomainSchema(((LinearAdditive) jackson.readValue(serialized, Profile.class)).getDomain());
+		model = new OpponentModel(schema, 3);
+		place = schema.getIssueIndex("place");
+	}
+
+	@Test
+	public void testFlatStart() {
+		for (int i = 0; i < schema.getIssueCount(); i++) {
+			assertEquals(1.0 / schema.getIssueCount(), model.getWeight(i), 1e-12);
+			assertEquals(1.0, model.getValueEstimate(i, 0), 1e-12);
+		}
+	}
+
+	@Test
+	public void testValueEstimates() {
+		long code = 0;
+		model.update(code, 0);
+		model.update(code, 0);
+		assertEquals(2, model.getCount(place, 0));
+		// published once per window of 3 offers
+		assertEquals(1.0, model.getValueEstimate(place, 1), 1e-12);
+		model.update(code, 0);
+		assertEquals(1.0, model.getValueEstimate(place, 0), 1e-12);
+		assertEquals(Math.pow(1, 0.4) / Math.pow(4, 0.4), model.getValueEstimate(place, 1), 1e-12);
+	}
+
+	@Test
+	public void testVersion() {
+		long version = model.getVersion();
+		model.update(0, 0);
+		model.update(0, 0);
+		assertEquals(version, model.getVersion());
+		model.update(0, 0);
+		assertTrue(model.getVersion() != version);
+		version = model.getVersion();
+		for (int n = 0; n < 2; n++) {
+			model.update(0, 0);
+		}
+		assertEquals(version, model.getVersion());
+	}
+
+	@Test
+	public void testStableIssueGainsWeight() {
+		// the opponent keeps the first place, and moves the other issues
+		// between their first two values every window of 3 offers
+		for (int n = 0; n < 30; n++) {
+			int[] ordinals = new int[schema.getIssueCount()];
+			for (int i = 0; i < ordinals.length; i++) {
+				ordinals[i] = i == place ? 0 : (n / 3) % 2;
+			}
+			model.update(encode(ordinals), n / 100.0);
+		}
+		for (int i = 0; i < schema.getIssueCount(); i++) {
+			if (i != place) {
+				assertTrue(model.getWeight(place) > model.getWeight(i));
+			}
+		}
+		double total = 0;
+		for (int i = 0; i < schema.getIssueCount(); i++) {
+			total += model.getWeight(i);
+		}
+		assertEquals(1.0, total, 1e-9);
+		assertTrue(model.getUtility(0) > model.getUtility(schema.getStride(place)));
+	}
+
+	@Test
+	public void testWarmStart() throws IOException {
+		File file = File.createTempFile("encounters", ".log");
+		file.delete();
+		OpponentPrior prior;
+		try (EncounterLog log = EncounterLog.open(file)) {
+			// an opponent that never changes the place
+			log.begin("opponent", schema);
+			for (int n = 0; n < 10; n++) {
+				int[] ordinals = new int[schema.getIssueCount()];
+				for (int i = 0; i < ordinals.length; i++) {
+					ordinals[i] = i == place ? 0 : n % schema.getValueCount(i);
+				}
+				log.addOffer(encode(ordinals));
+			}
+			log.commit(10, -1, 0);
+			EncounterLog.Cursor cursor = log.cursor();
+			cursor.next();
+			prior = OpponentPrior.of(cursor);
+			prior.add(cursor);
+		} finally {
+			file.delete();
+		}
+		model.warmStart(prior);
+		assertEquals(prior.getWeight(place), model.getWeight(place), 1e-12);
+		assertTrue(model.getWeight(place) > 1.0 / schema.getIssueCount());
+		assertEquals(1.0, model.getValueEstimate(place, 0), 1e-12);
+		assertTrue(model.getValueEstimate(place, 1) < 1);
+	}
+
+	private long encode(int[] ordinals) {
+		long code = 0;
+		for (int i = 0; i < ordinals.length; i++) {
+			code += ordinals[i] * schema.getStride(i);
+		}
+		return code;
+	}
+}
@@ -0,0 +1,120 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+public class ParetoFrontierTest {
+
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private final Random random = new Random(1);
+	private BidTable table;
+	private ParetoFrontier frontier;
+	private NashTracker nash;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		table = new BidTable(new CompiledProfile((LinearAdditive) jackson.readValue(serialized, Profile.class)));
+		frontier = new ParetoFrontier(table);
+		nash = new NashTracker(table, frontier);
+	}
+
+	@Test
+	public void testFullFrontier() {
+		frontier.setCandidates(table.size());
+		for (int rank = 0; rank < table.size(); rank++) {
+			frontier.setOpponentUtility(rank, random.nextInt(20) / 20.0);
+		}
+		frontier.update();
+		assertNash();
+		assertEquals(bruteForce(table.size()), frontierRanks());
+	}
+
+	@Test
+	public void testIncrementalUpdates() {
+		frontier.setCandidates(50);
+		for (int rank = 0; rank < 50; rank++) {
+			frontier.setOpponentUtility(rank, random.nextDouble());
+		}
+		frontier.update();
+		assertNash();
+		assertEquals(bruteForce(50), frontierRanks());
+
+		// more candidates
+		frontier.setCandidates(120);
+		for (int rank = 50; rank < 120; rank++) {
+			frontier.setOpponentUtility(rank, random.nextDouble());
+		}
+		frontier.update();
+		assertNash();
+		assertEquals(bruteForce(120), frontierRanks());
+
+		// some opponent utilities change
+		for (int n = 0; n < 10; n++) {
+			frontier.setOpponentUtility(30 + random.nextInt(90), random.nextDouble());
+		}
+		frontier.update();
+		assertNash();
+		assertEquals(bruteForce(120), frontierRanks());
+
+		// fewer candidates
+		frontier.setCandidates(70);
+		frontier.update();
+		assertNash();
+		assertEquals(bruteForce(70), frontierRanks());
+	}
+
+	private void assertNash() {
+		nash.update();
+		int best = -1;
+		for (int i = 0; i < frontier.size(); i++) {
+			int rank = frontier.getRank(i);
+			if (best < 0 || table.getUtility(rank) * frontier.getOpponentUtility(rank) > table.getUtility(best)
+					* frontier.getOpponentUtility(best)) {
+				best = rank;
+			}
+		}
+		assertEquals(best, nash.getNashRank());
+	}
+
+	private List<Integer> frontierRanks() {
+		List<Integer> ranks = new ArrayList<>();
+		for (int i = 0; i < frontier.size(); i++) {
+			ranks.add(frontier.getRank(i));
+		}
+		return ranks;
+	}
+
+	private List<Integer> bruteForce(int candidates) {
+		List<Integer> ranks = new ArrayList<>();
+		for (int a = 0; a < candidates; a++) {
+			boolean dominated = false;
+			for (int b = 0; b < candidates && !dominated; b++) {
+				double ourA = table.getUtility(a), ourB = table.getUtility(b);
+				double theirA = frontier.getOpponentUtility(a), theirB = frontier.getOpponentUtility(b);
+				dominated = ourB >= ourA && theirB >= theirA && (ourB > ourA || theirB > theirA);
+			}
+			if (!dominated) {
+				ranks.add(a);
+			}
+		}
+		return ranks;
+	}
+}
@@ -0,0 +1,63 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PriorStoreTest {
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("priors", ".store");
+	}
+
+	@After
+	public void after() {
+		file.delete();
+	}
+
+	@Test
+	public void testLookup() throws IOException {
+		List<OpponentPrior> priors = new ArrayList<>();
+		for (int n = 0; n < 100; n++) {
+			priors.add(new OpponentPrior("agent" + n + "x", "domain" + (n % 3), new int[] { 2, n + 1 }));
+		}
+		PriorStore.write(file, priors, 1234);
+
+		PriorStore store = PriorStore.open(file);
+		assertEquals(1234, store.getCheckpoint());
+		assertEquals(100, store.getCount());
+		assertEquals(100, store.getAll().size());
+		for (int n = 0; n < 100; n++) {
+			OpponentPrior prior = store.get("agent" + n + "x_5", "domain" + (n % 3));
+			assertEquals("agent" + n + "x", prior.getOpponent());
+			assertEquals(n + 1, prior.getRadix(1));
+		}
+		assertNull(store.get("agent1x", "domain0"));
+		assertNull(store.get("unknown", "domain1"));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		PriorStore.write(file, Collections.<OpponentPrior>emptyList(), -1);
+		PriorStore store = PriorStore.open(file);
+		assertEquals(0, store.getCount());
+		assertNull(store.get("agent", "domain"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAStore() throws IOException {
+		PriorStore.open(file);
+	}
+}
@@ -0,0 +1,208 @@
+package geniusweb.sampleagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.NumberValue;
+import geniusweb.issuevalue.NumberValueSet;
+import geniusweb.issuevalue.Range;
+import geniusweb.issuevalue.Value;
+import geniusweb.issuevalue.ValueSet;
+import geniusweb.profile.utilityspace.DiscreteValueSetUtilities;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+import geniusweb.profile.utilityspace.NumberValueSetUtilities;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+
+/**
+ * Generates a domain of any size with two linear additive profiles on it, for
+ * tests and benchmarks at production scale. The domain has discrete issues
+ * "issue0", "issue1", ... and numeric issues "number0", "number1", ... with
+ * the range low, low + step, ... The profiles are random, and pulled towards
+ * each other's opposite by the opposition: at 0 they are independent, at 1
+ * what one party likes best the other likes least.
+ * <p>
+ * The profiles are built in memory and can be written as GeniusWeb JSON, in
+ * the format of src/test/resources/testprofile.json.
+ */
+public class ProfileGenerator {
+
+	private static final ObjectMapper jackson = new ObjectMapper();
+
+	private final Domain domain;
+	private final LinearAdditiveUtilitySpace[] profiles = new LinearAdditiveUtilitySpace[2];
+
+	// A domain with discrete issues only
+	public ProfileGenerator(int discreteIssues, int values, double opposition, long seed) {
+		this(discreteIssues, values, 0, BigDecimal.ZERO, BigDecimal.ONE, 0, opposition, seed);
+	}
+
+	/**
+	 * @param numericIssues number of numeric issues
+	 * @param low           lowest value of the numeric issues
+	 * @param step          step between the values of the numeric issues
+	 * @param numericValues number of values of each numeric issue
+	 * @param opposition    from 0, independent profiles, to 1, opposed profiles
+	 */
+	public ProfileGenerator(int discreteIssues, int values, int numericIssues, BigDecimal low, BigDecimal step,
+			int numericValues, double opposition, long seed) {
+		if (discreteIssues + numericIssues == 0 || opposition < 0 || opposition > 1) {
+			throw new IllegalArgumentException("Need an issue and an opposition between 0 and 1");
+		}
+		Random random = new Random(seed);
+		Map<String, ValueSet> issues = new HashMap<>();
+		List<Map<String, ValueSetUtilities>> utilities = new ArrayList<>();
+		List<Map<String, BigDecimal>> weights = new ArrayList<>();
+		for (int party = 0; party < 2; party++) {
+			utilities.add(new HashMap<>());
+			weights.add(new HashMap<>());
+		}
+		for (int i = 0; i < discreteIssues; i++) {
+			String issue = "issue" + i;
+			List<DiscreteValue> valueList = new ArrayList<>();
+			Map<DiscreteValue, BigDecimal> first = new HashMap<>();
+			Map<DiscreteValue, BigDecimal> second = new HashMap<>();
+			for (int v = 0; v < values; v++) {
+				DiscreteValue value = new DiscreteValue("v" + v);
+				valueList.add(value);
+				double utility = random.nextDouble();
+				first.put(value, decimal(utility));
+				second.put(value, decimal(oppose(utility, random.nextDouble(), opposition)));
+			}
+			issues.put(issue, new DiscreteValueSet(valueList));
+			utilities.get(0).put(issue, new DiscreteValueSetUtilities(first));
+			utilities.get(1).put(issue, new DiscreteValueSetUtilities(second));
+		}
+		BigDecimal high = low.add(step.multiply(BigDecimal.valueOf(numericValues - 1)));
+		for (int i = 0; i < numericIssues; i++) {
+			String issue = "number" + i;
+			issues.put(issue, new NumberValueSet(new Range(low, high, step)));
+			double lowUtility = random.nextDouble();
+			double highUtility = random.nextDouble();
+			utilities.get(0).put(issue, new NumberValueSetUtilities(low, decimal(lowUtility), high,
+					decimal(highUtility)));
+			utilities.get(1).put(issue,
+					new NumberValueSetUtilities(low, decimal(oppose(lowUtility, random.nextDouble(), opposition)),
+							high, decimal(oppose(highUtility, random.nextDouble(), opposition))));
+		}
+		this.domain = new Domain("generated" + discreteIssues + "x" + values + "n" + numericIssues + "x"
+				+ numericValues, issues);
+		for (int party = 0; party < 2; party++) {
+			List<String> names = new ArrayList<>(issues.keySet());
+			double[] raw = new double[names.size()];
+			double total = 0;
+			for (int i = 0; i < raw.length; i++) {
+				raw[i] = 0.1 + random.nextDouble();
+				total += raw[i];
+			}
+			// the weights have to add up to exactly 1, the last one gets what is left
+			BigDecimal rest = BigDecimal.ONE;
+			for (int i = 0; i < raw.length - 1; i++) {
+				BigDecimal weight = decimal(raw[i] / total);
+				weights.get(party).put(names.get(i), weight);
+				rest = rest.subtract(weight);
+			}
+			weights.get(party).put(names.get(raw.length - 1), rest);
+			this.profiles[party] = new LinearAdditiveUtilitySpace(this.domain, this.domain.getName() + "_" + party,
+					utilities.get(party), weights.get(party), null);
+		}
+	}
+
+	public Domain getDomain() {
+		return this.domain;
+	}
+
+	// @param party 0 or 1
+	public LinearAdditiveUtilitySpace getProfile(int party) {
+		return this.profiles[party];
+	}
+
+	// The profile of the party as GeniusWeb JSON
+	public String toJson(int party) throws IOException {
+		return toJson(this.profiles[party]);
+	}
+
+	// Any linear additive profile as GeniusWeb JSON
+	public static String toJson(LinearAdditive profile) throws IOException {
+		Domain domain = profile.getDomain();
+		ObjectNode space = jackson.createObjectNode();
+		ObjectNode issueUtilities = space.putObject("issueUtilities");
+		ObjectNode issuesValues = jackson.createObjectNode();
+		for (String issue : domain.getIssues()) {
+			ValueSetUtilities utilities = profile.getUtilities().get(issue);
+			ValueSet values = domain.getValues(issue);
+			if (utilities instanceof DiscreteValueSetUtilities) {
+				ObjectNode valueUtilities = issueUtilities.putObject(issue).putObject("discreteutils")
+						.putObject("valueUtilities");
+				ArrayNode valueList = issuesValues.putObject(issue).putArray("values");
+				for (DiscreteValue value : ((DiscreteValueSet) values).getValues()) {
+					valueUtilities.put(value.getValue(), utilities.getUtility(value));
+					valueList.add(value.getValue());
+				}
+			} else {
+				NumberValueSetUtilities number = (NumberValueSetUtilities) utilities;
+				ObjectNode numberUtils = issueUtilities.putObject(issue).putObject("numberutils");
+				numberUtils.put("lowValue", number.getLowValue());
+				numberUtils.put("lowUtility", number.getLowUtility());
+				numberUtils.put("highValue", number.getHighValue());
+				numberUtils.put("highUtility", number.getHighUtility());
+				Range range = ((NumberValueSet) values).getRange();
+				issuesValues.putObject(issue).putArray("range").add(range.getLow()).add(range.getHigh())
+						.add(range.getStep());
+			}
+		}
+		ObjectNode issueWeights = space.putObject("issueWeights");
+		for (Map.Entry<String, BigDecimal> weight : profile.getWeights().entrySet()) {
+			issueWeights.put(weight.getKey(), weight.getValue());
+		}
+		ObjectNode domainNode = space.putObject("domain");
+		domainNode.put("name", domain.getName());
+		domainNode.set("issuesValues", issuesValues);
+		space.put("name", profile.getName());
+		Bid reservation = profile.getReservationBid();
+		if (reservation != null) {
+			ObjectNode reservationValues = space.putObject("reservationBid").putObject("issuevalues");
+			for (Map.Entry<String, Value> value : reservation.getIssueValues().entrySet()) {
+				if (value.getValue() instanceof NumberValue) {
+					reservationValues.put(value.getKey(), ((NumberValue) value.getValue()).getValue());
+				} else {
+					reservationValues.put(value.getKey(), ((DiscreteValue) value.getValue()).getValue());
+				}
+			}
+		}
+		ObjectNode root = jackson.createObjectNode();
+		root.set("LinearAdditiveUtilitySpace", space);
+		return jackson.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+	}
+
+	// Writes the profile of the party as GeniusWeb JSON
+	public void write(int party, File file) throws IOException {
+		Files.write(file.toPath(), toJson(party).getBytes(StandardCharsets.UTF_8));
+	}
+
+	// The utility of the other party, pulled towards the opposite of the utility
+	private static double oppose(double utility, double random, double opposition) {
+		return (1 - opposition) * random + opposition * (1 - utility);
+	}
+
+	private static BigDecimal decimal(double value) {
+		return BigDecimal.valueOf(value).setScale(6, RoundingMode.HALF_UP);
+	}
+}
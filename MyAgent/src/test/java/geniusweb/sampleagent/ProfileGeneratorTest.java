@@ -0,0 +1,77 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+
+public class ProfileGeneratorTest {
+
+	private final static ObjectMapper jackson = new ObjectMapper();
+
+	private final ProfileGenerator generator = new ProfileGenerator(3, 4, 1, new BigDecimal("900"),
+			new BigDecimal("300"), 5, 0.5, 7);
+
+	@Test
+	public void testDomain() {
+		DomainSchema schema = new DomainSchema(generator.getDomain());
+		assertEquals(4, schema.getIssueCount());
+		assertEquals(4 * 4 * 4 * 5, schema.size());
+		assertEquals(5, schema.getValueCount(schema.getIssueIndex("number0")));
+		for (int party = 0; party < 2; party++) {
+			BigDecimal total = BigDecimal.ZERO;
+			for (BigDecimal weight : generator.getProfile(party).getWeights().values()) {
+				total = total.add(weight);
+			}
+			assertEquals(0, BigDecimal.ONE.compareTo(total));
+		}
+	}
+
+	@Test
+	public void testOpposed() {
+		ProfileGenerator opposed = new ProfileGenerator(4, 6, 1, 3);
+		LinearAdditiveUtilitySpace first = opposed.getProfile(0);
+		LinearAdditiveUtilitySpace second = opposed.getProfile(1);
+		for (String issue : opposed.getDomain().getIssues()) {
+			for (DiscreteValue value : ((DiscreteValueSet) opposed.getDomain().getValues(issue)).getValues()) {
+				double ours = first.getUtilities().get(issue).getUtility(value).doubleValue();
+				double theirs = second.getUtilities().get(issue).getUtility(value).doubleValue();
+				assertEquals(1, ours + theirs, 1e-5);
+			}
+		}
+	}
+
+	@Test
+	public void testJsonRoundTrip() throws IOException {
+		File file = File.createTempFile("generated", ".json");
+		try {
+			for (int party = 0; party < 2; party++) {
+				generator.write(party, file);
+				String serialized = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+				LinearAdditive read = (LinearAdditive) jackson.readValue(serialized, Profile.class);
+				CompiledProfile expected = new CompiledProfile(generator.getProfile(party));
+				CompiledProfile actual = new CompiledProfile(read);
+				assertEquals(generator.getDomain().getName(), read.getDomain().getName());
+				assertEquals(expected.getSchema().size(), actual.getSchema().size());
+				for (long code = 0; code < expected.getSchema().size(); code++) {
+					assertEquals(expected.getUtility(code), actual.getUtility(code), 1e-12);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
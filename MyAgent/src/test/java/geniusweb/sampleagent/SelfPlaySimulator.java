@@ -0,0 +1,257 @@
+package geniusweb.sampleagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import geniusweb.actions.Accept;
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.party.DefaultParty;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+
+/**
+ * Runs many bilateral SAOP negotiations in this JVM, in parallel on a fixed
+ * thread pool, without a runserver. MyAgent plays the first profile of a
+ * {@link ProfileGenerator} against a party on the second profile, MyAgent
+ * itself or a {@link BaselineParty}. The parties take turns, starting
+ * alternately, until one accepts or both had all their rounds.
+ * <p>
+ * Reports the sessions per second, the latency of MyAgent's turns, from
+ * YourTurn until its action was sent, and the utilities of the agreements.
+ */
+public class SelfPlaySimulator {
+
+	private final int rounds;
+	private final int threads;
+	private final Parameters parameters;
+	// the opponent only gets the log level
+	private final Parameters opponentParameters;
+	private final URI[] profiles = new URI[2];
+	private final CompiledProfile[] compiled = new CompiledProfile[2];
+
+	/**
+	 * @param rounds     number of turns each party gets
+	 * @param parameters session parameters for MyAgent
+	 */
+	public SelfPlaySimulator(ProfileGenerator generator, int rounds, int threads, Parameters parameters)
+			throws IOException {
+		this.rounds = rounds;
+		this.threads = threads;
+		this.parameters = parameters;
+		this.opponentParameters = parameters.containsKey("logLevel")
+				? new Parameters().with("logLevel", parameters.get("logLevel"))
+				: new Parameters();
+		for (int party = 0; party < 2; party++) {
+			File file = File.createTempFile("selfplay" + party, ".json");
+			file.deleteOnExit();
+			generator.write(party, file);
+			this.profiles[party] = file.toURI();
+			this.compiled[party] = new CompiledProfile(generator.getProfile(party));
+		}
+	}
+
+	/**
+	 * Runs the sessions.
+	 *
+	 * @param opponents creates the opponent of every session
+	 */
+	public Result run(int sessions, Supplier<DefaultParty> opponents) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		long start = System.nanoTime();
+		List<Future<Session>> futures = new ArrayList<>();
+		for (int n = 0; n < sessions; n++) {
+			int number = n;
+			futures.add(pool.submit(() -> play(number, opponents.get())));
+		}
+		Result result = new Result();
+		for (Future<Session> future : futures) {
+			try {
+				result.add(future.get());
+			} catch (Exception e) {
+				result.failures++;
+			}
+		}
+		result.nanos = System.nanoTime() - start;
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+		return result;
+	}
+
+	// One session, MyAgent is party 0
+	private Session play(int number, DefaultParty opponent) throws Exception {
+		DefaultParty[] parties = { new MyAgent(), opponent };
+		PartyId[] ids = { new PartyId("MyAgent_" + number), new PartyId("Opponent_" + number) };
+		TestConnection[] connections = { new TestConnection(), new TestConnection() };
+		Date deadline = new Date(System.currentTimeMillis() + 3600000);
+		for (int party = 0; party < 2; party++) {
+			parties[party].connect(connections[party]);
+			parties[party].notifyChange(new Settings(ids[party], new ProfileRef(this.profiles[party]),
+					new ProtocolRef("SAOP"), new ProgressRounds(this.rounds, 0, deadline),
+					party == 0 ? this.parameters : this.opponentParameters));
+		}
+		Session session = new Session(this.rounds);
+		Bid agreement = null;
+		for (int turn = 0; turn < 2 * this.rounds && agreement == null; turn++) {
+			int party = (turn + number) % 2;
+			List<Action> actions = connections[party].getActions();
+			int sent = actions.size();
+			long start = System.nanoTime();
+			parties[party].notifyChange(new YourTurn());
+			if (party == 0) {
+				session.latencies[session.turns++] = System.nanoTime() - start;
+			}
+			if (actions.size() == sent) {
+				break; // no action, the party gave up
+			}
+			Action action = actions.get(actions.size() - 1);
+			ActionDone done = new ActionDone(action);
+			parties[0].notifyChange(done);
+			parties[1].notifyChange(done);
+			if (action instanceof Accept) {
+				agreement = ((Accept) action).getBid();
+			} else if (!(action instanceof Offer)) {
+				break;
+			}
+		}
+		Map<PartyId, Bid> agreed = new HashMap<>();
+		if (agreement != null) {
+			agreed.put(ids[0], agreement);
+			agreed.put(ids[1], agreement);
+			session.utilities = new double[] { this.compiled[0].getUtility(agreement),
+					this.compiled[1].getUtility(agreement) };
+		}
+		Finished finished = new Finished(new Agreements(agreed));
+		for (DefaultParty party : parties) {
+			party.notifyChange(finished);
+			party.terminate();
+		}
+		return session;
+	}
+
+	private static class Session {
+		private final long[] latencies;
+		private int turns = 0;
+		// utilities of the agreement for both parties, null if there was none
+		private double[] utilities;
+
+		private Session(int rounds) {
+			this.latencies = new long[rounds];
+		}
+	}
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static class Result {
+		private int sessions = 0;
+		private int failures = 0;
+		private int agreements = 0;
+		private long nanos;
+		private long[] latencies = new long[1024];
+		private int turns = 0;
+		private final double[] utilitySums = new double[2];
+
+		private void add(Session session) {
+			this.sessions++;
+			if (this.turns + session.turns > this.latencies.length) {
+				this.latencies = Arrays.copyOf(this.latencies, Math.max(this.turns + session.turns,
+						this.latencies.length * 2));
+			}
+			System.arraycopy(session.latencies, 0, this.latencies, this.turns, session.turns);
+			this.turns += session.turns;
+			if (session.utilities != null) {
+				this.agreements++;
+				this.utilitySums[0] += session.utilities[0];
+				this.utilitySums[1] += session.utilities[1];
+			}
+		}
+
+		// Sessions that finished
+		public int getSessions() {
+			return this.sessions;
+		}
+
+		// Sessions that threw
+		public int getFailures() {
+			return this.failures;
+		}
+
+		public int getAgreements() {
+			return this.agreements;
+		}
+
+		public int getTurns() {
+			return this.turns;
+		}
+
+		public double getSessionsPerSecond() {
+			return this.sessions / (this.nanos / 1e9);
+		}
+
+		// @param percentile from 0 to 100. @return latency of MyAgent's turns in ms
+		public double getLatency(double percentile) {
+			if (this.turns == 0) {
+				return Double.NaN;
+			}
+			long[] sorted = Arrays.copyOf(this.latencies, this.turns);
+			Arrays.sort(sorted);
+			int index = (int) Math.min(this.turns - 1, Math.ceil(percentile / 100 * this.turns) - 1);
+			return sorted[Math.max(0, index)] / 1e6;
+		}
+
+		// @param party 0 for MyAgent. @return the average utility of the agreements
+		public double getAverageUtility(int party) {
+			return this.agreements == 0 ? Double.NaN : this.utilitySums[party] / this.agreements;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d sessions (%d failed), %.1f sessions/s, %d agreements, utility %.3f vs %.3f, "
+							+ "turn latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+					this.sessions, this.failures, getSessionsPerSecond(), this.agreements, getAverageUtility(0),
+					getAverageUtility(1), getLatency(50), getLatency(90), getLatency(99), getLatency(100));
+		}
+	}
+
+	/**
+	 * Arguments: number of sessions, issues, values per issue, rounds, threads
+	 * and the opponent, "self" or the target utility of a
+	 * {@link BaselineParty}.
+	 */
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int issues = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int values = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		String opponent = args.length > 5 ? args[5] : "self";
+		SelfPlaySimulator simulator = new SelfPlaySimulator(new ProfileGenerator(issues, values, 0.7, 1), rounds,
+				threads, new Parameters().with("logLevel", "WARNING"));
+		Supplier<DefaultParty> opponents = "self".equals(opponent) ? MyAgent::new
+				: () -> new BaselineParty(Double.parseDouble(opponent), System.nanoTime());
+		System.out.println(simulator.run(sessions, opponents));
+	}
+}
@@ -0,0 +1,40 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import geniusweb.references.Parameters;
+
+public class SelfPlaySimulatorTest {
+
+	private static final int SESSIONS = 20;
+
+	private SelfPlaySimulator simulator() throws IOException {
+		return new SelfPlaySimulator(new ProfileGenerator(3, 5, 0.3, 11), 30, 4,
+				new Parameters().with("logLevel", "OFF"));
+	}
+
+	@Test
+	public void testSelfPlay() throws Exception {
+		SelfPlaySimulator.Result result = simulator().run(SESSIONS, MyAgent::new);
+		assertEquals(SESSIONS, result.getSessions());
+		assertEquals(0, result.getFailures());
+		assertTrue(result.getTurns() >= SESSIONS);
+		assertTrue(result.getLatency(50) <= result.getLatency(100));
+		assertTrue(result.getSessionsPerSecond() > 0);
+	}
+
+	@Test
+	public void testAgainstConceder() throws Exception {
+		SelfPlaySimulator.Result result = simulator().run(SESSIONS, () -> new BaselineParty(0.5, 3));
+		assertEquals(SESSIONS, result.getSessions());
+		assertEquals(0, result.getFailures());
+		assertTrue(result.getAgreements() > 0);
+		// MyAgent does not give in to an opponent that accepts half of the utility
+		assertTrue(result.getAverageUtility(0) >= 0.5);
+	}
+}
@@ -0,0 +1,106 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SharedPrecomputationTest {
+
+	private final SharedPrecomputation<String, Object> shared = new SharedPrecomputation<>();
+	private final AtomicInteger created = new AtomicInteger();
+
+	private Object create() {
+		created.incrementAndGet();
+		return new Object();
+	}
+
+	@Test
+	public void testSameKeySharesValue() {
+		SharedPrecomputation.Handle<Object> first = shared.acquire("a", this::create);
+		SharedPrecomputation.Handle<Object> second = shared.acquire("a", this::create);
+		SharedPrecomputation.Handle<Object> other = shared.acquire("b", this::create);
+		assertSame(first.get(), second.get());
+		assertNotSame(first.get(), other.get());
+		assertEquals(2, created.get());
+		assertEquals(2, shared.size());
+	}
+
+	@Test
+	public void testReleasedValueIsKept() {
+		SharedPrecomputation.Handle<Object> first = shared.acquire("a", this::create);
+		Object value = first.get();
+		first.close();
+		first.close();
+		// still softly referenced, and strongly by this test
+		SharedPrecomputation.Handle<Object> second = shared.acquire("a", this::create);
+		assertSame(value, second.get());
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	public void testEvict() {
+		SharedPrecomputation.Handle<Object> first = shared.acquire("a", this::create);
+		SharedPrecomputation.Handle<Object> holder = shared.acquire("a", this::create);
+		first.evict();
+		assertSame(first.get(), holder.get());
+		SharedPrecomputation.Handle<Object> second = shared.acquire("a", this::create);
+		assertNotSame(first.get(), second.get());
+		assertEquals(2, created.get());
+		holder.close();
+		second.close();
+	}
+
+	@Test
+	public void testCreateOutsideLock() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Future<SharedPrecomputation.Handle<Object>> slow = executor.submit(() -> shared.acquire("a", () -> {
+				started.countDown();
+				try {
+					done.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				return create();
+			}));
+			started.await();
+			// releasing another key purges, which must not wait for the factory
+			executor.submit(() -> shared.acquire("b", this::create).close()).get(1, TimeUnit.SECONDS);
+			Future<SharedPrecomputation.Handle<Object>> waiting = executor.submit(() -> shared.acquire("a", this::create));
+			done.countDown();
+			assertSame(slow.get(1, TimeUnit.SECONDS).get(), waiting.get(1, TimeUnit.SECONDS).get());
+			assertEquals(2, created.get());
+		} finally {
+			done.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFactoryFails() {
+		try {
+			shared.acquire("a", () -> {
+				throw new IllegalStateException("failed");
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		// the next agent creates it
+		assertNotNull(shared.acquire("a", this::create).get());
+		assertEquals(1, created.get());
+	}
+}
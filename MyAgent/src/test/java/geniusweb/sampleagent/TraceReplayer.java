@@ -0,0 +1,184 @@
+package geniusweb.sampleagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+import geniusweb.actions.Accept;
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import tudelft.utilities.logging.ReportToLogger;
+
+/**
+ * Replays a trace of a {@link TraceRecorder} in a fresh MyAgent, as fast as it
+ * goes: the agent gets the recorded informs, reads the recorded times from its
+ * clock, and every action it takes is compared with the recorded decision.
+ * <p>
+ * The profile comes from the trace. The files of the session, its trace,
+ * encounter log, persistent state and bid table cache, are left out, so a
+ * replay does not learn from or write to them.
+ */
+public class TraceReplayer {
+
+	// parameters that refer to files of the recorded session
+	private static final List<String> FILE_PARAMETERS = Arrays.asList(MyAgent.TRACE_FILE,
+			MyAgent.NEGOTIATION_DATA, MyAgent.PERSISTENT_STATE, MyAgent.BID_TABLE_CACHE);
+
+	private final List<TraceReader.Event> events;
+
+	public TraceReplayer(File trace) throws IOException {
+		this.events = TraceReader.readAll(trace);
+		if (this.events.isEmpty() || !(this.events.get(0).getInform() instanceof Settings)) {
+			throw new IOException("Trace " + trace + " does not start with the settings");
+		}
+	}
+
+	public Result replay() throws IOException {
+		ReplayClock clock = new ReplayClock();
+		for (TraceReader.Event event : this.events) {
+			if (event.isClock()) {
+				clock.times.add(event.getClock());
+			}
+		}
+		MyAgent agent = new MyAgent(new ReportToLogger("replay"), clock);
+		TestConnection connection = new TestConnection();
+		agent.connect(connection);
+		File profile = File.createTempFile("replay", ".json");
+		Result result = new Result();
+		try {
+			Files.write(profile.toPath(),
+					ProfileGenerator.toJson(this.events.get(0).getProfile()).getBytes(StandardCharsets.UTF_8));
+			agent.notifyChange(replaySettings((Settings) this.events.get(0).getInform(), profile));
+			// the actions sent on the last turn, null outside a turn
+			List<Action> turnActions = null;
+			for (TraceReader.Event event : this.events.subList(1, this.events.size())) {
+				if (event.getInform() instanceof YourTurn) {
+					int sent = connection.getActions().size();
+					long start = System.nanoTime();
+					agent.notifyChange(event.getInform());
+					result.replayNanos += System.nanoTime() - start;
+					turnActions = new ArrayList<>(
+							connection.getActions().subList(sent, connection.getActions().size()));
+				} else if (event.isInform()) {
+					agent.notifyChange(event.getInform());
+				} else if (event.isDecision()) {
+					result.turns++;
+					result.recordedNanos += event.getNanos();
+					Action replayed = turnActions == null || turnActions.isEmpty() ? null : turnActions.get(0);
+					if (!isSame(event.getAction(), replayed)) {
+						result.differences.add("turn " + result.turns + ": recorded " + event.getAction()
+								+ (event.isFallback() ? " (fallback)" : "") + ", replayed " + replayed);
+					}
+					turnActions = null;
+				}
+			}
+		} finally {
+			agent.terminate();
+			profile.delete();
+		}
+		return result;
+	}
+
+	// The recorded settings on the profile file, without the session files and without logging
+	private static Settings replaySettings(Settings settings, File profile) {
+		Map<String, Object> parameters = new HashMap<>();
+		for (String key : MyAgent.PARAMETERS) {
+			Object value = settings.getParameters().get(key);
+			if (value != null && !FILE_PARAMETERS.contains(key)) {
+				parameters.put(key, value);
+			}
+		}
+		parameters.put("logLevel", "OFF");
+		return new Settings(settings.getID(), new ProfileRef(profile.toURI()), settings.getProtocol(),
+				settings.getProgress(), new Parameters(parameters));
+	}
+
+	// Actions have no equals, they are the same if their type, actor and bid are
+	private static boolean isSame(Action recorded, Action replayed) {
+		if (recorded == null || replayed == null) {
+			return recorded == replayed;
+		}
+		if (recorded.getClass() != replayed.getClass() || !recorded.getActor().equals(replayed.getActor())) {
+			return false;
+		}
+		if (recorded instanceof Offer) {
+			return ((Offer) recorded).getBid().equals(((Offer) replayed).getBid());
+		}
+		if (recorded instanceof Accept) {
+			return ((Accept) recorded).getBid().equals(((Accept) replayed).getBid());
+		}
+		return true;
+	}
+
+	// Gives the recorded times in order, the last one again when they run out
+	private static class ReplayClock implements LongSupplier {
+		private final ConcurrentLinkedQueue<Long> times = new ConcurrentLinkedQueue<>();
+		private volatile long last = 0;
+
+		@Override
+		public long getAsLong() {
+			Long time = this.times.poll();
+			if (time != null) {
+				this.last = time;
+			}
+			return this.last;
+		}
+	}
+
+	/**
+	 * The outcome of a replay.
+	 */
+	public static class Result {
+		private int turns = 0;
+		private final List<String> differences = new ArrayList<>();
+		private long recordedNanos = 0;
+		private long replayNanos = 0;
+
+		// Recorded decisions
+		public int getTurns() {
+			return this.turns;
+		}
+
+		// The turns where the replayed action differs from the recorded one
+		public List<String> getDifferences() {
+			return this.differences;
+		}
+
+		// Time the recorded turns took in ns
+		public long getRecordedNanos() {
+			return this.recordedNanos;
+		}
+
+		// Time the replayed turns took in ns
+		public long getReplayNanos() {
+			return this.replayNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d turns, %d differences, turns took %.3f ms recorded and %.3f ms replayed",
+					this.turns, this.differences.size(), this.recordedNanos / 1e6, this.replayNanos / 1e6);
+		}
+	}
+
+	// Argument: the trace file
+	public static void main(String[] args) throws IOException {
+		Result result = new TraceReplayer(new File(args[0])).replay();
+		System.out.println(result);
+		for (String difference : result.getDifferences()) {
+			System.out.println(difference);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import geniusweb.actions.Accept;
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.bidspace.AllBidsList;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.profile.Profile;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.progress.Progress;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+import tudelft.utilities.logging.ReportToLogger;
+
+public class TraceTest {
+
+	private static final PartyId ME = new PartyId("party1");
+	private static final PartyId OPPONENT = new PartyId("opponentAgent");
+	private static final String PROFILE = "src/test/resources/testprofile.json";
+
+	private LinearAdditive profile;
+	private File traceFile;
+
+	@Before
+	public void before() throws IOException {
+		String serialized = new String(Files.readAllBytes(Paths.get(PROFILE)), StandardCharsets.UTF_8);
+		profile = (LinearAdditive) new ObjectMapper().readValue(serialized, Profile.class);
+		traceFile = File.createTempFile("trace", ".bin");
+	}
+
+	@After
+	public void after() {
+		traceFile.delete();
+	}
+
+	// Plays a session against an opponent that walks through the bid space, @return the actions of the agent
+	private List<Action> play(MyAgent agent, Progress progress) throws URISyntaxException {
+		TestConnection connection = new TestConnection();
+		agent.connect(connection);
+		agent.notifyChange(new Settings(ME, new ProfileRef(new URI("file:" + PROFILE)), new ProtocolRef("SAOP"),
+				progress, new Parameters().with("traceFile", traceFile.getPath()).with("logLevel", "OFF")));
+		AllBidsList bids = new AllBidsList(profile.getDomain());
+		Bid agreement = null;
+		for (int round = 0; round < 15 && agreement == null; round++) {
+			Bid offer = bids.get(BigInteger.valueOf(round * 37).mod(bids.size()));
+			agent.notifyChange(new ActionDone(new Offer(OPPONENT, offer)));
+			agent.notifyChange(new YourTurn());
+			Action action = connection.getActions().get(connection.getActions().size() - 1);
+			agent.notifyChange(new ActionDone(action));
+			if (action instanceof Accept) {
+				agreement = ((Accept) action).getBid();
+			}
+		}
+		Map<PartyId, Bid> agreements = new HashMap<>();
+		if (agreement != null) {
+			agreements.put(ME, agreement);
+			agreements.put(OPPONENT, agreement);
+		}
+		agent.notifyChange(new Finished(new Agreements(agreements)));
+		agent.terminate();
+		return connection.getActions();
+	}
+
+	@Test
+	public void testReplayRounds() throws Exception {
+		List<Action> actions = play(new MyAgent(),
+				new ProgressRounds(30, 0, new Date(System.currentTimeMillis() + 3600000)));
+		TraceReplayer.Result result = new TraceReplayer(traceFile).replay();
+		assertEquals(actions.size(), result.getTurns());
+		assertEquals(Collections.emptyList(), result.getDifferences());
+	}
+
+	@Test
+	public void testReplayTime() throws Exception {
+		// a clock that moves on a second every time it is read, so the agent concedes
+		long start = System.currentTimeMillis();
+		AtomicLong time = new AtomicLong(start);
+		LongSupplier clock = () -> time.getAndAdd(1000);
+		List<Action> actions = play(new MyAgent(new ReportToLogger("trace"), clock),
+				new ProgressTime(60000L, new Date(start)));
+		TraceReplayer.Result result = new TraceReplayer(traceFile).replay();
+		assertEquals(actions.size(), result.getTurns());
+		assertEquals(Collections.emptyList(), result.getDifferences());
+	}
+
+	@Test
+	public void testReadBack() throws Exception {
+		Date deadline = new Date(System.currentTimeMillis() + 3600000);
+		List<Action> actions = play(new MyAgent(), new ProgressRounds(30, 0, deadline));
+		List<TraceReader.Event> events = TraceReader.readAll(traceFile);
+
+		Settings settings = (Settings) events.get(0).getInform();
+		assertEquals(ME, settings.getID());
+		assertEquals("SAOP", settings.getProtocol().getURI().toString());
+		ProgressRounds progress = (ProgressRounds) settings.getProgress();
+		assertEquals(30, progress.getTotalRounds().intValue());
+		assertEquals(deadline, progress.getTerminationTime());
+		assertEquals(traceFile.getPath(), settings.getParameters().get("traceFile"));
+		assertEquals("OFF", settings.getParameters().get("logLevel"));
+
+		LinearAdditive read = events.get(0).getProfile();
+		assertEquals(profile.getName(), read.getName());
+		assertEquals(profile.getDomain().getIssues(), read.getDomain().getIssues());
+		for (Bid bid : new AllBidsList(profile.getDomain())) {
+			assertEquals(0, profile.getUtility(bid).compareTo(read.getUtility(bid)));
+		}
+
+		int decisions = 0;
+		for (TraceReader.Event event : events) {
+			if (event.isDecision()) {
+				Action action = actions.get(decisions++);
+				assertEquals(action.getClass(), event.getAction().getClass());
+				assertTrue(event.getNanos() > 0);
+			}
+		}
+		assertEquals(actions.size(), decisions);
+		assertTrue(events.get(events.size() - 1).getInform() instanceof Finished);
+	}
+}
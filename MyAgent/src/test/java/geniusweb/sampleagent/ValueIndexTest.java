@@ -0,0 +1,88 @@
+package geniusweb.sampleagent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValueIndexTest {
+
+	private DomainSchema schema;
+	private BidTable table;
+	private ValueIndex index;
+
+	@Before
+	public void before() {
+		// 5^4 = 625 bids, not a multiple of 64
+		CompiledProfile profile = new CompiledProfile(new ProfileGenerator(4, 5, 0, 8).getProfile(0));
+		schema = profile.getSchema();
+		table = new BidTable(profile);
+		index = new ValueIndex(schema, table, table.size());
+	}
+
+	@Test
+	public void testValues() {
+		for (int issue = 0; issue < schema.getIssueCount(); issue++) {
+			for (int ordinal = 0; ordinal < schema.getValueCount(issue); ordinal++) {
+				int count = 0;
+				int next = index.nextWithValue(issue, ordinal, 0, 300);
+				for (int rank = 0; rank < 300; rank++) {
+					if (schema.decodeOrdinal(table.getCode(rank), issue) == ordinal) {
+						assertEquals(rank, next);
+						next = index.nextWithValue(issue, ordinal, rank + 1, 300);
+						count++;
+					}
+				}
+				assertEquals(-1, next);
+				assertEquals(count, index.countWithValue(issue, ordinal, 300));
+			}
+		}
+	}
+
+	@Test
+	public void testNearest() {
+		Random random = new Random(1);
+		double[] weights = new double[schema.getIssueCount()];
+		for (int n = 0; n < 200; n++) {
+			// whole weights, so that sums in another order are the same
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] = random.nextInt(5);
+			}
+			long code = random.nextInt((int) schema.size());
+			int candidates = 1 + random.nextInt(table.size());
+			assertEquals(bruteForce(code, weights, candidates), index.nearest(code, weights, candidates));
+			assertEquals(bruteForce(code, null, candidates), index.nearest(code, null, candidates));
+		}
+		assertEquals(-1, index.nearest(0, null, 0));
+	}
+
+	@Test
+	public void testPartialIndex() {
+		ValueIndex partial = new ValueIndex(schema, table, 100);
+		assertEquals(100, partial.size());
+		for (long code = 0; code < schema.size(); code += 7) {
+			assertEquals(bruteForce(code, null, 100), partial.nearest(code, null, table.size()));
+		}
+	}
+
+	// The lowest rank of the bids that match the most weight
+	private int bruteForce(long code, double[] weights, int candidates) {
+		int best = -1;
+		double bestScore = -1;
+		for (int rank = 0; rank < candidates; rank++) {
+			double score = 0;
+			for (int i = 0; i < schema.getIssueCount(); i++) {
+				if (schema.decodeOrdinal(code, i) == schema.decodeOrdinal(table.getCode(rank), i)) {
+					score += weights == null ? 1 : weights[i];
+				}
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				best = rank;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,70 @@
+package geniusweb.sampleagent.benchmarks;
+
+import geniusweb.sampleagent.BidRanking;
+import geniusweb.sampleagent.BidTableBuilder;
+import geniusweb.sampleagent.CompiledProfile;
+import geniusweb.sampleagent.LazyBidRanking;
+import geniusweb.sampleagent.ProfileGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bid space setup of MyAgent.init: compiling the profile and building the
+ * sorted bid table, or the lazy ranking for domains that are too large for a
+ * table. The domains have 10 values per issue, so 10^issues bids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BidSpaceBenchmark {
+
+    // The largest domain MyAgent sorts in a table on the heap
+    private static final long MAX_TABLE_SIZE = 1 << 22;
+
+    @Param({ "2", "4", "6", "7" })
+    public int issues;
+
+    private ProfileGenerator profiles;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.profiles = new ProfileGenerator(this.issues, 10, 1, 1);
+    }
+
+    @Benchmark
+    public CompiledProfile compileProfile() {
+        return new CompiledProfile(this.profiles.getProfile(0));
+    }
+
+    @Benchmark
+    public BidRanking init() {
+        CompiledProfile profile = new CompiledProfile(this.profiles.getProfile(0));
+        BidRanking ranking = rank(profile);
+        // the lazy ranking does its first work on the best bid
+        ranking.getBid(0);
+        return ranking;
+    }
+
+    // The ranking MyAgent uses for the profile
+    private static BidRanking rank(CompiledProfile profile) {
+        return profile.getSchema().size() <= MAX_TABLE_SIZE
+                ? new BidTableBuilder(profile, ForkJoinPool.commonPool(), Long.MAX_VALUE).build()
+                : new LazyBidRanking(profile);
+    }
+}
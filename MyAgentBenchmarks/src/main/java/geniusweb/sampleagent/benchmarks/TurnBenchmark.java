@@ -0,0 +1,123 @@
+package geniusweb.sampleagent.benchmarks;
+
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Agreements;
+import geniusweb.inform.Finished;
+import geniusweb.inform.Settings;
+import geniusweb.inform.YourTurn;
+import geniusweb.progress.Progress;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+import geniusweb.sampleagent.BidRanking;
+import geniusweb.sampleagent.CompiledProfile;
+import geniusweb.sampleagent.LazyBidRanking;
+import geniusweb.sampleagent.MyAgent;
+import geniusweb.sampleagent.ProfileGenerator;
+import geniusweb.sampleagent.TestConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One turn of MyAgent after the bid space was set up, driven through the
+ * agent as the protocol does: the opponent's offer, which plans our turn on
+ * the worker, our turn and our action coming back. So the benchmark runs the
+ * agent's own bidding and acceptance, with its limits, and the number of
+ * candidates follows the acceptable utility as the session goes on. The
+ * opponent offers bids that are mostly good for it, as in a real negotiation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TurnBenchmark {
+
+    private static final int OFFERS = 1024;
+    private static final int WARMUP_TURNS = 50;
+    private static final PartyId ME = new PartyId("party1");
+    private static final PartyId OPPONENT = new PartyId("opponent");
+
+    @Param({ "2", "4", "6", "7" })
+    public int issues;
+
+    // "rounds" or "time", rounds sessions are long enough to not end during the benchmark
+    @Param({ "rounds", "time" })
+    public String progress;
+
+    private File profileFile;
+    private MyAgent agent;
+    private TestConnection connection;
+    private ActionDone[] offers;
+    private final YourTurn yourTurn = new YourTurn();
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ProfileGenerator profiles = new ProfileGenerator(this.issues, 10, 1, 1);
+        this.profileFile = File.createTempFile("turn", ".json");
+        profiles.write(0, this.profileFile);
+
+        // the offers are drawn from the opponent's best bids
+        BidRanking opponentRanking = new LazyBidRanking(new CompiledProfile(profiles.getProfile(1)));
+        int offerRanks = Math.min(opponentRanking.size(), 10000);
+        Random random = new Random(2);
+        this.offers = new ActionDone[OFFERS];
+        for (int n = 0; n < OFFERS; n++) {
+            double r = random.nextDouble();
+            this.offers[n] = new ActionDone(new Offer(OPPONENT, opponentRanking.getBid((int) (offerRanks * r * r * r))));
+        }
+
+        Progress session = "time".equals(this.progress) ? new ProgressTime(24 * 3600000L, new Date())
+                : new ProgressRounds(Integer.MAX_VALUE, 0, new Date(System.currentTimeMillis() + 24 * 3600000L));
+        this.agent = new MyAgent();
+        this.connection = new TestConnection();
+        this.agent.connect(this.connection);
+        this.agent.notifyChange(new Settings(ME, new ProfileRef(this.profileFile.toURI()),
+                new ProtocolRef(URI.create("SAOP")), session, new Parameters().with("logLevel", "WARNING")));
+        for (int n = 0; n < WARMUP_TURNS; n++) {
+            turn();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.agent.notifyChange(new Finished(new Agreements()));
+        this.agent.terminate();
+        this.profileFile.delete();
+    }
+
+    // The opponent's offer, our turn and our action coming back
+    @Benchmark
+    public Action turn() {
+        this.agent.notifyChange(this.offers[this.next++ & (OFFERS - 1)]);
+        this.agent.notifyChange(this.yourTurn);
+        Action action = this.connection.getActions().remove(0);
+        this.agent.notifyChange(new ActionDone(action));
+        return action;
+    }
+}